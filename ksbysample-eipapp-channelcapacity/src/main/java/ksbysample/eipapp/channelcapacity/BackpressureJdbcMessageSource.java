@@ -0,0 +1,68 @@
+package ksbysample.eipapp.channelcapacity;
+
+import org.springframework.integration.channel.QueueChannel;
+import org.springframework.integration.core.MessageSource;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.jdbc.core.BeanPropertyRowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.messaging.Message;
+
+import javax.sql.DataSource;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * QUEUE_SOURCE テーブルの status = 0 のデータを、送信先の QueueChannel の空き容量の件数だけ取得する MessageSource。
+ * <ul>
+ * <li>QueueChannel が一杯の場合には DB にアクセスせずに null を返す。</li>
+ * <li>取得したデータの status は 1 に更新するがコミットはしない。poller を transactional にして、QueueChannel への
+ * 送信までを1つのトランザクションにすること。送信までに例外が throw された場合には status = 0 に戻る。</li>
+ * </ul>
+ * 空き容量の件数しか取得しないので、QueueChannel に送信するのがこの MessageSource の poller だけであれば
+ * 送信時に待たされることはなく、トランザクションの中で QueueChannel の空きを待つこともない。
+ */
+public class BackpressureJdbcMessageSource implements MessageSource<List<QueueSourceDto>> {
+
+    private static final String SELECT_SQL = "select * from QUEUE_SOURCE where status = 0 order by seq limit :limit";
+
+    private static final String UPDATE_SQL = "update QUEUE_SOURCE set status = 1 where seq in (:seq)";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    private final QueueChannel dstChannel;
+
+    private final BeanPropertyRowMapper<QueueSourceDto> rowMapper = new BeanPropertyRowMapper<>(QueueSourceDto.class);
+
+    private volatile boolean saturated = false;
+
+    public BackpressureJdbcMessageSource(DataSource dataSource, QueueChannel dstChannel) {
+        this.jdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
+        this.dstChannel = dstChannel;
+    }
+
+    @Override
+    public Message<List<QueueSourceDto>> receive() {
+        int remainingCapacity = this.dstChannel.getRemainingCapacity();
+        this.saturated = remainingCapacity <= 0;
+        if (this.saturated) {
+            return null;
+        }
+
+        List<QueueSourceDto> queueSourceDtoList = this.jdbcTemplate.query(SELECT_SQL
+                , new MapSqlParameterSource("limit", remainingCapacity), this.rowMapper);
+        if (!queueSourceDtoList.isEmpty()) {
+            this.jdbcTemplate.update(UPDATE_SQL, new MapSqlParameterSource("seq"
+                    , queueSourceDtoList.stream().map(QueueSourceDto::getSeq).collect(Collectors.toList())));
+        }
+        return queueSourceDtoList.isEmpty() ? null : MessageBuilder.withPayload(queueSourceDtoList).build();
+    }
+
+    /**
+     * @return 直前の receive で QueueChannel が一杯だった ( DB からデータを取得しなかった ) 場合には true
+     */
+    public boolean isSaturated() {
+        return this.saturated;
+    }
+
+}
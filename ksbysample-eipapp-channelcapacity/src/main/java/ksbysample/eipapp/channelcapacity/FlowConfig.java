@@ -5,14 +5,11 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.integration.channel.NullChannel;
 import org.springframework.integration.channel.QueueChannel;
-import org.springframework.integration.core.MessageSource;
 import org.springframework.integration.dsl.IntegrationFlow;
 import org.springframework.integration.dsl.IntegrationFlows;
 import org.springframework.integration.dsl.Pollers;
 import org.springframework.integration.dsl.channel.MessageChannels;
 import org.springframework.integration.handler.LoggingHandler;
-import org.springframework.integration.jdbc.JdbcPollingChannelAdapter;
-import org.springframework.jdbc.core.BeanPropertyRowMapper;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.transaction.PlatformTransactionManager;
 
@@ -37,20 +34,29 @@ public class FlowConfig {
     }
 
     @Bean
-    public MessageSource<Object> jdbcMessageSource() {
-        JdbcPollingChannelAdapter adapter
-                = new JdbcPollingChannelAdapter(this.dataSource
-                , "select * from QUEUE_SOURCE where status = 0");
-        adapter.setRowMapper(new BeanPropertyRowMapper<>(QueueSourceDto.class));
-        adapter.setUpdateSql("update QUEUE_SOURCE set status = 1 where seq in (:seq)");
-        return adapter;
+    public BackpressureJdbcMessageSource jdbcMessageSource() {
+        // dstChannel の空き容量の件数だけ取得する。dstChannel が一杯の場合には DB にアクセスしない
+        return new BackpressureJdbcMessageSource(this.dataSource, dstChannel());
+    }
+
+    @Bean
+    public AdaptivePollingTrigger selectDbPollingTrigger() {
+        // 取得件数は dstChannel の空き容量で決まるので、fullPageSize は指定しない
+        AdaptivePollingTrigger trigger = new AdaptivePollingTrigger(1000, 30000, 0);
+        // dstChannel が一杯で取得しなかった場合はデータがないわけではないので、ポーリング間隔を延ばさない
+        trigger.setBusyIndicator(jdbcMessageSource()::isSaturated);
+        return trigger;
     }
 
     @Bean
     public IntegrationFlow selectDbFlow() {
+        // データがない間はポーリングの間隔を 1秒 → 2秒 → ... → 30秒 と延ばしていく。
+        // 取得 → dstChannel への送信までを1つのトランザクションにして、送信までに失敗したら status を 0 に戻す。
+        // 取得するのは dstChannel の空き容量の件数だけなので、トランザクションの中で送信が待たされることはない
         return IntegrationFlows.from(jdbcMessageSource()
                 , e -> e.poller(Pollers
-                        .fixedDelay(1000)
+                        .trigger(selectDbPollingTrigger())
+                        .advice(selectDbPollingTrigger())
                         .maxMessagesPerPoll(5)
                         .transactional(this.transactionManager)))
                 // 取得したデータは List 形式で全件 payload にセットされているので、split で１payload１データに分割する
@@ -0,0 +1,52 @@
+package ksbysample.eipapp.datacopy.benchmark;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * world データベースの orders テーブルに status = '00' のデータを benchmark.rows 件登録する。
+ * poller が開始される前 ( Bean の初期化時 ) に登録する。
+ */
+@Component
+public class BenchmarkDataInitializer {
+
+    private static final String INSERT_SQL = "insert into orders (order_id, status) values (?, '00')";
+
+    private static final int BATCH_SIZE = 10000;
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final int rows;
+
+    public BenchmarkDataInitializer(@Qualifier("dataSourceWorld") DataSource dataSource
+            , @Value("${benchmark.rows:100000}") int rows) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.rows = rows;
+    }
+
+    @PostConstruct
+    public void init() {
+        List<String> orderIdList = new ArrayList<>(BATCH_SIZE);
+        for (int i = 1; i <= this.rows; i++) {
+            orderIdList.add(String.format("%010d", i));
+            if (orderIdList.size() == BATCH_SIZE || i == this.rows) {
+                this.jdbcTemplate.batchUpdate(INSERT_SQL, orderIdList, orderIdList.size()
+                        , (ps, orderId) -> ps.setString(1, orderId));
+                orderIdList.clear();
+            }
+        }
+        logger.info("world.orders に {} 件登録しました。", this.rows);
+    }
+
+}
@@ -0,0 +1,118 @@
+package ksbysample.eipapp.datacopy.benchmark;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationContext;
+import org.springframework.integration.channel.QueueChannel;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * world.orders のデータが全て ksbylending.orders にコピーされて削除されるまで待ち、スループット、
+ * ステージ毎の処理時間のパーセンタイル、QueueChannel に溜まっているメッセージ数の推移をログに出力する。
+ */
+@Component
+public class BenchmarkRunner {
+
+    private static final String COUNT_SQL = "select count(*) from orders";
+
+    private static final double[] PERCENTILES = {50, 90, 99, 100};
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final JdbcTemplate jdbcTemplateWorld;
+
+    private final JdbcTemplate jdbcTemplateKsbylending;
+
+    private final ApplicationContext applicationContext;
+
+    private final StageTimingBeanPostProcessor stageTimingBeanPostProcessor;
+
+    private final int rows;
+
+    private final long timeoutSeconds;
+
+    private final long samplingInterval;
+
+    public BenchmarkRunner(@Qualifier("dataSourceWorld") DataSource dataSourceWorld
+            , @Qualifier("dataSourceKsbylending") DataSource dataSourceKsbylending
+            , ApplicationContext applicationContext
+            , StageTimingBeanPostProcessor stageTimingBeanPostProcessor
+            , @Value("${benchmark.rows:100000}") int rows
+            , @Value("${benchmark.timeout-seconds:600}") long timeoutSeconds
+            , @Value("${benchmark.sampling-interval:100}") long samplingInterval) {
+        this.jdbcTemplateWorld = new JdbcTemplate(dataSourceWorld);
+        this.jdbcTemplateKsbylending = new JdbcTemplate(dataSourceKsbylending);
+        this.applicationContext = applicationContext;
+        this.stageTimingBeanPostProcessor = stageTimingBeanPostProcessor;
+        this.rows = rows;
+        this.timeoutSeconds = timeoutSeconds;
+        this.samplingInterval = samplingInterval;
+    }
+
+    public void run() throws InterruptedException {
+        // copyChannel, delChannel ( datacopy.channel.journal.enabled=false の場合のみ QueueChannel )
+        Map<String, QueueChannel> channelMap
+                = new TreeMap<>(this.applicationContext.getBeansOfType(QueueChannel.class));
+        Map<String, Integer> maxQueueSizeMap = new TreeMap<>();
+        long samplesPerLine = Math.max(1, TimeUnit.SECONDS.toMillis(1) / this.samplingInterval);
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(this.timeoutSeconds);
+        long endNanos;
+        int copiedCount;
+        int remainingCount;
+        for (long sample = 1; ; sample++) {
+            Thread.sleep(this.samplingInterval);
+
+            StringBuilder sb = new StringBuilder();
+            for (Map.Entry<String, QueueChannel> entry : channelMap.entrySet()) {
+                int queueSize = entry.getValue().getQueueSize();
+                maxQueueSizeMap.merge(entry.getKey(), queueSize, Math::max);
+                sb.append(String.format(" %s=%d", entry.getKey(), queueSize));
+            }
+
+            endNanos = System.nanoTime();
+            copiedCount = this.jdbcTemplateKsbylending.queryForObject(COUNT_SQL, Integer.class);
+            remainingCount = this.jdbcTemplateWorld.queryForObject(COUNT_SQL, Integer.class);
+            if (sample % samplesPerLine == 0) {
+                logger.info("[queue] {} ms:{} copied={} remaining={}"
+                        , TimeUnit.NANOSECONDS.toMillis(endNanos - startNanos(endNanos)), sb, copiedCount
+                        , remainingCount);
+            }
+            if ((copiedCount >= this.rows && remainingCount == 0) || endNanos > deadline) {
+                break;
+            }
+        }
+
+        double elapsedSeconds = (endNanos - startNanos(endNanos)) / (double) TimeUnit.SECONDS.toNanos(1);
+        if (copiedCount < this.rows || remainingCount > 0) {
+            logger.warn("{} 秒以内に完了しませんでした ( copied = {}, remaining = {} )。"
+                    , this.timeoutSeconds, copiedCount, remainingCount);
+        }
+        logger.info("[throughput] rows = {}, elapsed = {} s, {} rows/s"
+                , copiedCount, String.format("%.3f", elapsedSeconds)
+                , String.format("%.1f", elapsedSeconds == 0 ? 0 : copiedCount / elapsedSeconds));
+        for (Map.Entry<String, LatencyRecorder> entry : this.stageTimingBeanPostProcessor.getRecorderMap().entrySet()) {
+            LatencyRecorder recorder = entry.getValue();
+            StringBuilder sb = new StringBuilder();
+            for (double percentile : PERCENTILES) {
+                sb.append(String.format(" p%.0f=%.3fms", percentile, recorder.percentileMillis(percentile)));
+            }
+            logger.info("[latency] {}: count={}{}", entry.getKey(), recorder.getCount(), sb);
+        }
+        logger.info("[queue] max queue size: {}", maxQueueSizeMap);
+    }
+
+    private long startNanos(long nowNanos) {
+        long firstPollNanos = this.stageTimingBeanPostProcessor.getFirstPollNanos();
+        return firstPollNanos == 0 ? nowNanos : firstPollNanos;
+    }
+
+}
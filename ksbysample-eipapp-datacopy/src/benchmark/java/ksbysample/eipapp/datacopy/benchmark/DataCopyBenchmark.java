@@ -0,0 +1,23 @@
+package ksbysample.eipapp.datacopy.benchmark;
+
+import ksbysample.eipapp.datacopy.Application;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * MySQL, PostgreSQL の代わりに H2 ( MySQL, PostgreSQL 互換モード ) を使用して、
+ * getFlow → copyFlow → delFlow のスループットを計測する。
+ * gradlew benchmark -Dbenchmark.rows=100000 で実行する。datacopy.* のプロパティも -D で指定できる。
+ */
+public class DataCopyBenchmark {
+
+    public static void main(String[] args) throws InterruptedException {
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(Application.class)
+                .profiles("benchmark")
+                .web(false)
+                .run(args)) {
+            context.getBean(BenchmarkRunner.class).run();
+        }
+    }
+
+}
@@ -0,0 +1,40 @@
+package ksbysample.eipapp.datacopy.benchmark;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 処理時間 ( ナノ秒 ) を記録し、パーセンタイルを計算する。
+ */
+public class LatencyRecorder {
+
+    private long[] nanosArray = new long[1024];
+
+    private int count = 0;
+
+    public synchronized void record(long nanos) {
+        if (count == nanosArray.length) {
+            nanosArray = Arrays.copyOf(nanosArray, count * 2);
+        }
+        nanosArray[count++] = nanos;
+    }
+
+    public synchronized int getCount() {
+        return count;
+    }
+
+    /**
+     * @param percentile 0 〜 100
+     * @return 処理時間 ( ミリ秒 )。記録がない場合には 0
+     */
+    public synchronized double percentileMillis(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(nanosArray, count);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100 * count) - 1;
+        return sorted[Math.max(0, Math.min(index, count - 1))] / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+}
@@ -0,0 +1,89 @@
+package ksbysample.eipapp.datacopy.benchmark;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.integration.endpoint.AbstractMessageSource;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * datacopy の各ステージ ( ポーリング、copy、del ) の Bean を proxy にして、receive, handle の処理時間を記録する。
+ */
+@Component
+public class StageTimingBeanPostProcessor implements BeanPostProcessor {
+
+    // Bean 名 → ステージ名, 計測するメソッド名
+    private static final Map<String, String[]> TARGET_BEAN_MAP;
+
+    static {
+        Map<String, String[]> map = new LinkedHashMap<>();
+        map.put("ordersJdbcMessageSource", new String[]{"poll", "receive"});
+        map.put("copyOrdersMessageHandler", new String[]{"copy", "handle"});
+        map.put("delOrdersMessageHandler", new String[]{"del", "handle"});
+        TARGET_BEAN_MAP = Collections.unmodifiableMap(map);
+    }
+
+    private final Map<String, LatencyRecorder> recorderMap = new LinkedHashMap<>();
+
+    private final AtomicLong firstPollNanos = new AtomicLong();
+
+    public StageTimingBeanPostProcessor() {
+        for (String[] target : TARGET_BEAN_MAP.values()) {
+            this.recorderMap.putIfAbsent(target[0], new LatencyRecorder());
+        }
+    }
+
+    @Override
+    public Object postProcessBeforeInitialization(Object bean, String beanName) throws BeansException {
+        return bean;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+        String[] target = TARGET_BEAN_MAP.get(beanName);
+        if (target == null) {
+            return bean;
+        }
+
+        String stage = target[0];
+        String methodName = target[1];
+        LatencyRecorder recorder = this.recorderMap.get(stage);
+        ProxyFactory proxyFactory = new ProxyFactory(bean);
+        // AbstractMessageSource#receive は final で CGLIB では計測できないので、interface の proxy にする。
+        // それ以外はクラスの型で inject されるので CGLIB の proxy にする
+        proxyFactory.setProxyTargetClass(!(bean instanceof AbstractMessageSource));
+        proxyFactory.addAdvice((MethodInterceptor) invocation -> {
+            if (!invocation.getMethod().getName().equals(methodName)) {
+                return invocation.proceed();
+            }
+            long start = System.nanoTime();
+            if ("poll".equals(stage)) {
+                this.firstPollNanos.compareAndSet(0, start);
+            }
+            try {
+                return invocation.proceed();
+            } finally {
+                recorder.record(System.nanoTime() - start);
+            }
+        });
+        return proxyFactory.getProxy();
+    }
+
+    public Map<String, LatencyRecorder> getRecorderMap() {
+        return Collections.unmodifiableMap(this.recorderMap);
+    }
+
+    /**
+     * @return 最初にポーリングした時刻 ( System#nanoTime )。まだポーリングしていない場合には 0
+     */
+    public long getFirstPollNanos() {
+        return this.firstPollNanos.get();
+    }
+
+}
@@ -0,0 +1,5 @@
+CREATE TABLE IF NOT EXISTS orders
+(
+  order_id VARCHAR(32) NOT NULL,
+  CONSTRAINT pk_orders PRIMARY KEY (order_id)
+);
@@ -0,0 +1,7 @@
+CREATE TABLE IF NOT EXISTS orders
+(
+  order_id VARCHAR(32) NOT NULL,
+  status CHAR(2) NOT NULL,
+  CONSTRAINT pk_orders PRIMARY KEY (order_id)
+);
+CREATE INDEX IF NOT EXISTS idx_orders_status_order_id ON orders (status, order_id);
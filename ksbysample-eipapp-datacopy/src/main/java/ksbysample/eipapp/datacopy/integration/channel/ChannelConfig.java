@@ -1,21 +1,80 @@
 package ksbysample.eipapp.datacopy.integration.channel;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.integration.channel.QueueChannel;
 import org.springframework.messaging.MessageChannel;
 
+import java.io.IOException;
+import java.nio.file.Paths;
+
 @Configuration
 public class ChannelConfig {
 
+    private final boolean journalEnabled;
+
+    private final String journalDir;
+
+    private final int journalSegmentSize;
+
+    private final FsyncPolicy journalFsyncPolicy;
+
+    private final int journalFsyncBatchSize;
+
+    private final long journalFsyncInterval;
+
+    private final int journalMaxDeliveryAttempts;
+
+    public ChannelConfig(@Value("${datacopy.channel.journal.enabled:false}") boolean journalEnabled
+            , @Value("${datacopy.channel.journal.dir:journal}") String journalDir
+            , @Value("${datacopy.channel.journal.segment-size:67108864}") int journalSegmentSize
+            , @Value("${datacopy.channel.journal.fsync-policy:PER_BATCH}") FsyncPolicy journalFsyncPolicy
+            , @Value("${datacopy.channel.journal.fsync-batch-size:100}") int journalFsyncBatchSize
+            , @Value("${datacopy.channel.journal.fsync-interval:1000}") long journalFsyncInterval
+            , @Value("${datacopy.channel.journal.max-delivery-attempts:5}") int journalMaxDeliveryAttempts
+            , @Value("${datacopy.copy.idempotent.enabled:false}") boolean idempotentEnabled) {
+        // getFlow では world のトランザクションがコミットされる前に copyChannel に送信するので、コミットに失敗すると
+        // status が '00' に戻ったデータがジャーナルに残り、再度取得されて2回 insert される。
+        // また処理に失敗したメッセージは chunk 単位でコミットされた分も含めて再処理されるので、冪等モードが必須になる
+        if (journalEnabled && !idempotentEnabled) {
+            throw new IllegalStateException(
+                    "datacopy.channel.journal.enabled=true の場合は datacopy.copy.idempotent.enabled=true を設定してください。");
+        }
+        this.journalEnabled = journalEnabled;
+        this.journalDir = journalDir;
+        this.journalSegmentSize = journalSegmentSize;
+        this.journalFsyncPolicy = journalFsyncPolicy;
+        this.journalFsyncBatchSize = journalFsyncBatchSize;
+        this.journalFsyncInterval = journalFsyncInterval;
+        this.journalMaxDeliveryAttempts = journalMaxDeliveryAttempts;
+    }
+
     @Bean
-    public MessageChannel copyChannel() {
+    public MessageChannel copyChannel() throws IOException {
+        if (journalEnabled) {
+            return journalChannel("copyChannel");
+        }
         return new QueueChannel(100);
     }
 
     @Bean
-    public MessageChannel delChannel() {
+    public MessageChannel delChannel() throws IOException {
+        if (journalEnabled) {
+            return journalChannel("delChannel");
+        }
         return new QueueChannel(100);
     }
 
+    private MessageChannel journalChannel(String name) throws IOException {
+        // 処理できなかったメッセージは <name>-dead-letter ディレクトリのジャーナルに移動する
+        return new JournalChannel<>(journal(name), new OrdersDtoListCodec()
+                , journal(name + "-dead-letter"), journalMaxDeliveryAttempts);
+    }
+
+    private MappedSegmentJournal journal(String name) throws IOException {
+        return new MappedSegmentJournal(Paths.get(journalDir, name), journalSegmentSize
+                , journalFsyncPolicy, journalFsyncBatchSize, journalFsyncInterval);
+    }
+
 }
@@ -0,0 +1,23 @@
+package ksbysample.eipapp.datacopy.integration.channel;
+
+/**
+ * {@link MappedSegmentJournal} に書き込んだデータをディスクに同期するタイミング。
+ */
+public enum FsyncPolicy {
+
+    /**
+     * メッセージを1件書き込む毎 ( 受信済の位置を更新する毎 ) に同期する。最も安全だが最も遅い。
+     */
+    PER_MESSAGE,
+
+    /**
+     * 書き込み・受信済の位置の更新が fsync-batch-size 回行われる毎に同期する。
+     */
+    PER_BATCH,
+
+    /**
+     * fsync-interval ミリ秒毎に同期する。JVM がクラッシュしても OS が落ちなければデータは失われない。
+     */
+    PERIODIC
+
+}
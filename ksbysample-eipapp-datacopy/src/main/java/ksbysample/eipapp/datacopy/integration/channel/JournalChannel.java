@@ -0,0 +1,106 @@
+package ksbysample.eipapp.datacopy.integration.channel;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.integration.channel.AbstractPollableChannel;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.Message;
+
+import java.io.IOException;
+
+/**
+ * payload を {@link MappedSegmentJournal} に書き込む PollableChannel。QueueChannel と異なり、アプリケーションが
+ * 停止・クラッシュしても処理が完了していないメッセージは失われない。
+ * <ul>
+ * <li>受信したメッセージは {@link #commit()} が呼ばれるまで処理済にならない。受信する poller には
+ * {@link JournalChannelCommitAdvice} を指定し、handler が正常終了したら commit、例外が throw されたら
+ * {@link #rollback()} して同じメッセージを再度受信する ( at-least-once )。</li>
+ * <li>同じメッセージの処理が maxDeliveryAttempts 回失敗した場合には、そのメッセージを deadLetterJournal に移動して
+ * 次のメッセージを受信する。処理できないメッセージで後続のメッセージが処理されなくなることを防ぐ。</li>
+ * <li>このため受信するのは1つのポーラー ( 1スレッド ) だけにすること。</li>
+ * <li>ジャーナルに書き込むのは payload だけで、header は書き込まない。</li>
+ * </ul>
+ */
+public class JournalChannel<T> extends AbstractPollableChannel implements DisposableBean {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final MappedSegmentJournal journal;
+
+    private final JournalCodec<T> codec;
+
+    private final MappedSegmentJournal deadLetterJournal;
+
+    private final int maxDeliveryAttempts;
+
+    /**
+     * @param journal             メッセージを書き込むジャーナル
+     * @param codec               payload とバイト列を変換する
+     * @param deadLetterJournal   処理が maxDeliveryAttempts 回失敗したメッセージを移動するジャーナル
+     * @param maxDeliveryAttempts 1つのメッセージを処理する最大の回数。0 以下の場合には成功するまで処理する
+     */
+    public JournalChannel(MappedSegmentJournal journal, JournalCodec<T> codec
+            , MappedSegmentJournal deadLetterJournal, int maxDeliveryAttempts) {
+        this.journal = journal;
+        this.codec = codec;
+        this.deadLetterJournal = deadLetterJournal;
+        this.maxDeliveryAttempts = maxDeliveryAttempts;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected boolean doSend(Message<?> message, long timeout) {
+        journal.append(codec.encode((T) message.getPayload()));
+        return true;
+    }
+
+    @Override
+    protected Message<?> doReceive(long timeout) {
+        try {
+            byte[] data = journal.read(timeout);
+            return data == null ? null : MessageBuilder.withPayload(codec.decode(data)).build();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    /**
+     * 受信したメッセージを処理済にする。
+     */
+    public void commit() {
+        journal.commit();
+    }
+
+    /**
+     * 処理済にしていないメッセージを次の receive で再度受信する。処理が maxDeliveryAttempts 回失敗したメッセージは
+     * deadLetterJournal に移動して処理済にする。
+     */
+    public void rollback() {
+        int failedAttempts = journal.rollback();
+        if (maxDeliveryAttempts <= 0 || failedAttempts < maxDeliveryAttempts) {
+            return;
+        }
+
+        try {
+            byte[] data = journal.read(0);
+            if (data != null) {
+                // deadLetterJournal に書き込んでから commit するので、移動中にクラッシュしてもメッセージは失われない
+                deadLetterJournal.append(data);
+                journal.commit();
+                logger.error("{} のメッセージの処理が {} 回失敗したため、デッドレターに移動しました ( payload = {} )。"
+                        , getComponentName(), failedAttempts, codec.decode(data));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void destroy() throws IOException {
+        journal.close();
+        deadLetterJournal.close();
+    }
+
+}
@@ -0,0 +1,33 @@
+package ksbysample.eipapp.datacopy.integration.channel;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+
+/**
+ * {@link JournalChannel} から受信する poller に指定する advice。poller の advice は1メッセージ毎の
+ * 受信 → handler の呼び出しを囲むので、handler が正常終了したら受信したメッセージを commit し、
+ * 例外が throw されたら rollback して次のポーリングで同じメッセージを再度受信させる。
+ * 同じメッセージが datacopy.channel.journal.max-delivery-attempts 回失敗した場合には、rollback 時にデッドレターに
+ * 移動されるので、次のポーリングでは後続のメッセージを受信する。
+ */
+public class JournalChannelCommitAdvice implements MethodInterceptor {
+
+    private final JournalChannel<?> channel;
+
+    public JournalChannelCommitAdvice(JournalChannel<?> channel) {
+        this.channel = channel;
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        try {
+            Object result = invocation.proceed();
+            channel.commit();
+            return result;
+        } catch (Throwable e) {
+            channel.rollback();
+            throw e;
+        }
+    }
+
+}
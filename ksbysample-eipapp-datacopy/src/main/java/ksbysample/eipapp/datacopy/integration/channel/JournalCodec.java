@@ -0,0 +1,12 @@
+package ksbysample.eipapp.datacopy.integration.channel;
+
+/**
+ * {@link JournalChannel} でメッセージの payload をジャーナルに書き込むバイト列に変換する。
+ */
+public interface JournalCodec<T> {
+
+    byte[] encode(T payload);
+
+    T decode(byte[] data);
+
+}
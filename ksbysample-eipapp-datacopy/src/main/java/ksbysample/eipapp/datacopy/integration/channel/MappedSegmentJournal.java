@@ -0,0 +1,412 @@
+package ksbysample.eipapp.datacopy.integration.channel;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * メモリマップしたセグメントファイルに追記していくジャーナル。
+ * <ul>
+ * <li>レコードは 長さ ( int ) + CRC32 ( int ) + データ の形式で書き込む。長さを最後に書き込むので、長さが 0 の位置が
+ * データの終端になる。</li>
+ * <li>セグメントに書き込めなくなったら次のセグメント ( 00000000000000000001.seg, ... ) を作成する。</li>
+ * <li>{@link #read(long)} で読み込んだ位置は {@link #commit()} で checkpoint ファイルに記録され、記録された位置より前の
+ * セグメントは削除する ( compaction )。再起動時は checkpoint ファイルに記録された位置から読み込みを再開する。</li>
+ * <li>{@link #rollback()} を呼ぶと、読み込む位置を commit した位置に戻す。commit していないデータは再度読み込まれる。
+ * commit した位置のレコードを rollback した回数は checkpoint ファイルに記録し、再起動後も引き継ぐ。</li>
+ * <li>起動時に最後のセグメントを先頭から確認し、CRC32 が一致しないレコード ( 書き込み途中にクラッシュしたもの ) 以降を
+ * 破棄する。</li>
+ * </ul>
+ * 全ての操作はこのインスタンスで同期しているので、複数のスレッドから呼び出してもよい。
+ */
+public class MappedSegmentJournal implements Closeable {
+
+    private static final String SEGMENT_FILE_SUFFIX = ".seg";
+
+    private static final String SEGMENT_FILE_FORMAT = "%020d" + SEGMENT_FILE_SUFFIX;
+
+    private static final String CHECKPOINT_FILE_NAME = "checkpoint";
+
+    // セグメント番号 ( long ) + セグメント内の位置 ( int ) + rollback した回数 ( int )
+    private static final int CHECKPOINT_SIZE = 16;
+
+    // 長さ ( int ) + CRC32 ( int )
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    // レコードの後ろに書き込む終端 ( 長さ 0 ) の領域
+    private static final int END_MARK_SIZE = 4;
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final Path dir;
+
+    private final int segmentSize;
+
+    private final FsyncPolicy fsyncPolicy;
+
+    private final int fsyncBatchSize;
+
+    private final Map<Long, Segment> segmentMap = new HashMap<>();
+
+    // Windows ではマップ中のファイルは削除できないので、削除できなかったファイルは次の compaction 時に再度削除する
+    private final List<Path> pendingDeletePathList = new ArrayList<>();
+
+    private final FileChannel checkpointChannel;
+
+    private final MappedByteBuffer checkpointBuffer;
+
+    private ScheduledExecutorService fsyncScheduler;
+
+    private long writeSegmentNo;
+
+    private int writePos;
+
+    private long readSegmentNo;
+
+    private int readPos;
+
+    private long committedSegmentNo;
+
+    private int committedPos;
+
+    private int failedAttempts;
+
+    private int unsyncedCount = 0;
+
+    private boolean closed = false;
+
+    public MappedSegmentJournal(Path dir, int segmentSize, FsyncPolicy fsyncPolicy, int fsyncBatchSize
+            , long fsyncIntervalMillis) throws IOException {
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+        this.fsyncPolicy = fsyncPolicy;
+        this.fsyncBatchSize = fsyncBatchSize;
+
+        Files.createDirectories(dir);
+        this.checkpointChannel = FileChannel.open(dir.resolve(CHECKPOINT_FILE_NAME)
+                , StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        this.checkpointBuffer = this.checkpointChannel.map(FileChannel.MapMode.READ_WRITE, 0, CHECKPOINT_SIZE);
+        recover();
+
+        if (fsyncPolicy == FsyncPolicy.PERIODIC) {
+            CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("journalFsync-");
+            threadFactory.setDaemon(true);
+            this.fsyncScheduler = Executors.newSingleThreadScheduledExecutor(threadFactory);
+            this.fsyncScheduler.scheduleWithFixedDelay(this::sync
+                    , fsyncIntervalMillis, fsyncIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void recover() throws IOException {
+        List<Long> segmentNoList;
+        try (Stream<Path> pathStream = Files.list(this.dir)) {
+            segmentNoList = pathStream
+                    .map(path -> path.getFileName().toString())
+                    .filter(fileName -> fileName.endsWith(SEGMENT_FILE_SUFFIX))
+                    .map(fileName -> Long.parseLong(fileName.substring(0, fileName.length() - SEGMENT_FILE_SUFFIX.length())))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+
+        this.committedSegmentNo = this.checkpointBuffer.getLong(0);
+        this.committedPos = this.checkpointBuffer.getInt(8);
+        this.failedAttempts = this.checkpointBuffer.getInt(12);
+        if (segmentNoList.isEmpty() || this.committedSegmentNo > segmentNoList.get(segmentNoList.size() - 1)) {
+            this.committedSegmentNo = segmentNoList.isEmpty() ? 0 : segmentNoList.get(segmentNoList.size() - 1) + 1;
+            this.committedPos = 0;
+            this.failedAttempts = 0;
+        } else if (this.committedSegmentNo < segmentNoList.get(0)) {
+            // checkpoint を同期する前に compaction したセグメントが削除されていた
+            this.committedSegmentNo = segmentNoList.get(0);
+            this.committedPos = 0;
+            this.failedAttempts = 0;
+        }
+        for (Long segmentNo : segmentNoList) {
+            if (segmentNo < this.committedSegmentNo) {
+                deleteSegmentFile(segmentNo);
+            }
+        }
+
+        this.readSegmentNo = this.committedSegmentNo;
+        this.readPos = this.committedPos;
+        this.writeSegmentNo = segmentNoList.isEmpty()
+                ? this.committedSegmentNo
+                : Math.max(this.committedSegmentNo, segmentNoList.get(segmentNoList.size() - 1));
+
+        // 最後のセグメントの有効なレコードの終わりを探す
+        MappedByteBuffer buffer = segment(this.writeSegmentNo).buffer;
+        int pos = this.writeSegmentNo == this.committedSegmentNo ? this.committedPos : 0;
+        while (pos + RECORD_HEADER_SIZE <= this.segmentSize) {
+            int length = buffer.getInt(pos);
+            if (length <= 0 || pos + RECORD_HEADER_SIZE + length > this.segmentSize
+                    || buffer.getInt(pos + 4) != crc(buffer, pos + RECORD_HEADER_SIZE, length)) {
+                break;
+            }
+            pos += RECORD_HEADER_SIZE + length;
+        }
+        if (pos + END_MARK_SIZE <= this.segmentSize) {
+            buffer.putInt(pos, 0);
+        }
+        this.writePos = pos;
+        logger.info("ジャーナル {} を開きました ( 未処理のデータの位置 = {}:{}, 書き込み位置 = {}:{} )。"
+                , this.dir, this.committedSegmentNo, this.committedPos, this.writeSegmentNo, this.writePos);
+    }
+
+    public synchronized void append(byte[] data) {
+        checkNotClosed();
+        int recordSize = RECORD_HEADER_SIZE + data.length;
+        if (recordSize + END_MARK_SIZE > this.segmentSize) {
+            throw new IllegalArgumentException(String.format(
+                    "データのサイズ ( %d バイト ) がセグメントのサイズ ( %d バイト ) を超えています。", data.length, this.segmentSize));
+        }
+        if (this.writePos + recordSize + END_MARK_SIZE > this.segmentSize) {
+            rollover();
+        }
+
+        // データ → CRC32 → 次のレコードの位置の終端 → 長さ の順に書き込み、長さを書き込んだ時点でレコードを有効にする
+        MappedByteBuffer buffer = segment(this.writeSegmentNo).buffer;
+        ByteBuffer dataBuffer = buffer.duplicate();
+        dataBuffer.position(this.writePos + RECORD_HEADER_SIZE);
+        dataBuffer.put(data);
+        buffer.putInt(this.writePos + 4, crc(buffer, this.writePos + RECORD_HEADER_SIZE, data.length));
+        buffer.putInt(this.writePos + recordSize, 0);
+        buffer.putInt(this.writePos, data.length);
+        this.writePos += recordSize;
+
+        afterWrite();
+        notifyAll();
+    }
+
+    /**
+     * @param timeoutMillis データがない場合に待つ時間 ( ミリ秒 )。0 の場合は待たず、負の値の場合はデータが書き込まれるまで待つ
+     * @return 読み込んだデータ。データがない場合には null
+     */
+    public synchronized byte[] read(long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (!this.closed) {
+            byte[] data = readNext();
+            if (data != null || timeoutMillis == 0) {
+                return data;
+            }
+            if (timeoutMillis < 0) {
+                wait();
+            } else {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return null;
+                }
+                wait(remaining);
+            }
+        }
+        return null;
+    }
+
+    private byte[] readNext() {
+        while (this.readSegmentNo < this.writeSegmentNo || this.readPos < this.writePos) {
+            MappedByteBuffer buffer = segment(this.readSegmentNo).buffer;
+            int length = this.readPos + RECORD_HEADER_SIZE <= this.segmentSize ? buffer.getInt(this.readPos) : 0;
+            if (length <= 0) {
+                // セグメントの残りは使用されていないので、次のセグメントから読み込む
+                if (this.readSegmentNo != this.committedSegmentNo) {
+                    closeSegment(this.readSegmentNo);
+                }
+                this.readSegmentNo++;
+                this.readPos = 0;
+                continue;
+            }
+
+            byte[] data = new byte[length];
+            ByteBuffer dataBuffer = buffer.duplicate();
+            dataBuffer.position(this.readPos + RECORD_HEADER_SIZE);
+            dataBuffer.get(data);
+            if (buffer.getInt(this.readPos + 4) != crc(buffer, this.readPos + RECORD_HEADER_SIZE, length)) {
+                throw new IllegalStateException(String.format("ジャーナル %s のデータが壊れています ( %d:%d )。"
+                        , this.dir, this.readSegmentNo, this.readPos));
+            }
+            this.readPos += RECORD_HEADER_SIZE + length;
+            return data;
+        }
+        return null;
+    }
+
+    /**
+     * {@link #read(long)} で読み込んだデータを処理済にする。
+     */
+    public synchronized void commit() {
+        if (this.closed || (this.committedSegmentNo == this.readSegmentNo && this.committedPos == this.readPos)) {
+            return;
+        }
+
+        long oldCommittedSegmentNo = this.committedSegmentNo;
+        this.committedSegmentNo = this.readSegmentNo;
+        this.committedPos = this.readPos;
+        this.failedAttempts = 0;
+        this.checkpointBuffer.putLong(0, this.committedSegmentNo);
+        this.checkpointBuffer.putInt(8, this.committedPos);
+        this.checkpointBuffer.putInt(12, this.failedAttempts);
+
+        // 全て処理済になったセグメントを削除する
+        for (long segmentNo = oldCommittedSegmentNo; segmentNo < this.committedSegmentNo; segmentNo++) {
+            closeSegment(segmentNo);
+            deleteSegmentFile(segmentNo);
+        }
+
+        afterWrite();
+    }
+
+    /**
+     * 読み込む位置を最後に {@link #commit()} した位置に戻す。
+     *
+     * @return commit した位置のレコードを rollback した回数 ( 今回を含む )。読み込んでいなかった場合は回数を増やさない
+     */
+    public synchronized int rollback() {
+        if (this.closed) {
+            return this.failedAttempts;
+        }
+        if (this.readSegmentNo != this.committedSegmentNo || this.readPos != this.committedPos) {
+            this.failedAttempts++;
+            this.checkpointBuffer.putInt(12, this.failedAttempts);
+            afterWrite();
+        }
+        if (this.readSegmentNo != this.committedSegmentNo && this.readSegmentNo != this.writeSegmentNo) {
+            closeSegment(this.readSegmentNo);
+        }
+        this.readSegmentNo = this.committedSegmentNo;
+        this.readPos = this.committedPos;
+        return this.failedAttempts;
+    }
+
+    public synchronized void sync() {
+        if (this.closed) {
+            return;
+        }
+        segment(this.writeSegmentNo).buffer.force();
+        this.checkpointBuffer.force();
+        this.unsyncedCount = 0;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (this.closed) {
+            return;
+        }
+        if (this.fsyncScheduler != null) {
+            this.fsyncScheduler.shutdown();
+        }
+        sync();
+        this.closed = true;
+        for (Segment segment : this.segmentMap.values()) {
+            segment.channel.close();
+        }
+        this.segmentMap.clear();
+        this.checkpointChannel.close();
+        notifyAll();
+    }
+
+    private void rollover() {
+        Segment segment = segment(this.writeSegmentNo);
+        segment.buffer.force();
+        if (this.writeSegmentNo != this.readSegmentNo) {
+            closeSegment(this.writeSegmentNo);
+        }
+        this.writeSegmentNo++;
+        this.writePos = 0;
+    }
+
+    private void afterWrite() {
+        this.unsyncedCount++;
+        if (this.fsyncPolicy == FsyncPolicy.PER_MESSAGE
+                || (this.fsyncPolicy == FsyncPolicy.PER_BATCH && this.unsyncedCount >= this.fsyncBatchSize)) {
+            sync();
+        }
+    }
+
+    private void checkNotClosed() {
+        if (this.closed) {
+            throw new IllegalStateException(String.format("ジャーナル %s は close されています。", this.dir));
+        }
+    }
+
+    private Segment segment(long segmentNo) {
+        return this.segmentMap.computeIfAbsent(segmentNo, no -> {
+            try {
+                FileChannel channel = FileChannel.open(segmentPath(no)
+                        , StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+                return new Segment(channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, this.segmentSize));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private void closeSegment(long segmentNo) {
+        Segment segment = this.segmentMap.remove(segmentNo);
+        if (segment != null) {
+            try {
+                segment.channel.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private void deleteSegmentFile(long segmentNo) {
+        this.pendingDeletePathList.add(segmentPath(segmentNo));
+        for (Iterator<Path> it = this.pendingDeletePathList.iterator(); it.hasNext(); ) {
+            try {
+                Files.deleteIfExists(it.next());
+                it.remove();
+            } catch (IOException ignored) {
+                // マップが GC で解放されるまで削除できない
+            }
+        }
+    }
+
+    private Path segmentPath(long segmentNo) {
+        return this.dir.resolve(String.format(SEGMENT_FILE_FORMAT, segmentNo));
+    }
+
+    private int crc(ByteBuffer buffer, int pos, int length) {
+        ByteBuffer dataBuffer = buffer.duplicate();
+        dataBuffer.position(pos);
+        dataBuffer.limit(pos + length);
+        CRC32 crc32 = new CRC32();
+        crc32.update(dataBuffer);
+        return (int) crc32.getValue();
+    }
+
+    private static class Segment {
+
+        private final FileChannel channel;
+
+        private final MappedByteBuffer buffer;
+
+        private Segment(FileChannel channel, MappedByteBuffer buffer) {
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+    }
+
+}
@@ -0,0 +1,75 @@
+package ksbysample.eipapp.datacopy.integration.channel;
+
+import ksbysample.eipapp.datacopy.dto.OrdersDto;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * List&lt;OrdersDto&gt; を 件数 ( int ) + 1件毎に order_id, status ( 長さ ( short, null の場合は -1 ) + UTF-8 のバイト列 )
+ * のバイト列に変換する。
+ */
+public class OrdersDtoListCodec implements JournalCodec<List<OrdersDto>> {
+
+    private static final int NULL_LENGTH = -1;
+
+    @Override
+    public byte[] encode(List<OrdersDto> payload) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(4 + payload.size() * 16);
+        try (DataOutputStream out = new DataOutputStream(baos)) {
+            out.writeInt(payload.size());
+            for (OrdersDto dto : payload) {
+                writeString(out, dto.getOrderId());
+                writeString(out, dto.getStatus());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return baos.toByteArray();
+    }
+
+    @Override
+    public List<OrdersDto> decode(byte[] data) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+            int size = in.readInt();
+            List<OrdersDto> ordersDtoList = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                OrdersDto dto = new OrdersDto();
+                dto.setOrderId(readString(in));
+                dto.setStatus(readString(in));
+                ordersDtoList.add(dto);
+            }
+            return ordersDtoList;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeShort(NULL_LENGTH);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    private String readString(DataInputStream in) throws IOException {
+        short length = in.readShort();
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+}
@@ -1,38 +1,220 @@
 package ksbysample.eipapp.datacopy.integration.flow;
 
 import ksbysample.eipapp.datacopy.dto.OrdersDto;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.integration.annotation.MessageEndpoint;
 import org.springframework.integration.dsl.support.GenericHandler;
-import org.springframework.integration.jdbc.JdbcMessageHandler;
-import org.springframework.integration.support.MessageBuilder;
-import org.springframework.messaging.Message;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import javax.sql.DataSource;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.stream.Collectors;
 
 @MessageEndpoint
 public class CopyOrdersMessageHandler implements GenericHandler<List<OrdersDto>> {
 
-    private final DataSource dataSource;
+    private static final String INSERT_SQL = "insert into orders (order_id) values (?)";
 
-    public CopyOrdersMessageHandler(@Qualifier("dataSourceKsbylending") DataSource dataSource) {
-        this.dataSource = dataSource;
+    private static final String UPSERT_SQL = INSERT_SQL + " on conflict (order_id) do nothing";
+
+    private static final String COPY_SQL = "copy orders (order_id) from stdin with (format csv)";
+
+    // COPY は on conflict を指定できないので、冪等モードでは一時テーブルに COPY してから orders に insert する。
+    // 一時テーブルはセッション毎に作成されるので、コネクション毎に1度だけ作成する
+    private static final String CREATE_STAGE_TABLE_SQL
+            = "create temporary table if not exists orders_copy_stage on commit delete rows"
+            + " as select order_id from orders with no data";
+
+    private static final String COPY_STAGE_SQL = "copy orders_copy_stage (order_id) from stdin with (format csv)";
+
+    private static final String UPSERT_FROM_STAGE_SQL
+            = "insert into orders (order_id) select order_id from orders_copy_stage on conflict (order_id) do nothing";
+
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final int chunkSize;
+
+    private final boolean pgCopyEnabled;
+
+    private final int pgCopyMinRows;
+
+    private final boolean idempotentEnabled;
+
+    // コミット済の order_id ( LRU )。value は使用しない。JournalChannel で再処理されたメッセージや
+    // StaleClaimedOrdersSweeper で戻されたデータのうち、このプロセスでコミット済のものは insert しない
+    private final Map<String, Boolean> recentlyCopiedOrderIdMap;
+
+    // orders_copy_stage を作成済のコネクション。コネクションプールから破棄されたコネクションは GC で削除される
+    private final Set<PGConnection> stageTableCreatedConnectionSet
+            = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+
+    /**
+     * @param chunkSize     1回でコミットする件数
+     * @param pgCopyEnabled true の場合には、pgCopyMinRows 件以上のチャンクを COPY ... FROM STDIN で登録する
+     * @param pgCopyMinRows COPY で登録するチャンクの最小件数。これより少ない場合には batch insert で登録する
+     * @param idempotentEnabled true の場合には、既に登録されている order_id を on conflict do nothing で無視する。
+     *                          DelOrdersMessageHandler が失敗して再処理されたデータでチャンク全体がロールバック
+     *                          されないようにする
+     * @param idempotentLruSize idempotentEnabled = true の場合に、insert をスキップするためコミット済の
+     *                          order_id を保持する件数
+     */
+    public CopyOrdersMessageHandler(@Qualifier("dataSourceKsbylending") DataSource dataSource
+            , @Qualifier("transactionManagerKsbylending") PlatformTransactionManager transactionManager
+            , @Value("${datacopy.copy.chunk-size:1000}") int chunkSize
+            , @Value("${datacopy.copy.pg-copy.enabled:false}") boolean pgCopyEnabled
+            , @Value("${datacopy.copy.pg-copy.min-rows:500}") int pgCopyMinRows
+            , @Value("${datacopy.copy.idempotent.enabled:false}") boolean idempotentEnabled
+            , @Value("${datacopy.copy.idempotent.lru-size:100000}") int idempotentLruSize) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.chunkSize = chunkSize;
+        this.pgCopyEnabled = pgCopyEnabled;
+        this.pgCopyMinRows = pgCopyMinRows;
+        this.idempotentEnabled = idempotentEnabled;
+        // PartitionedCopyFlowConfig では複数のスレッドから呼び出されるので synchronizedMap にする
+        this.recentlyCopiedOrderIdMap = Collections.synchronizedMap(
+                new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+                    private static final long serialVersionUID = 1L;
+
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                        return size() > idempotentLruSize;
+                    }
+                });
     }
 
     @Override
-    @Transactional(transactionManager = "transactionManagerKsbylending")
     public Object handle(List<OrdersDto> payload, Map<String, Object> headers) {
-        JdbcMessageHandler insertHandler
-                = new JdbcMessageHandler(this.dataSource, "insert into orders (order_id) values (:payload.orderId)");
-        insertHandler.afterPropertiesSet();
-        payload.stream()
-                .forEach(dto -> {
-                    Message<OrdersDto> orderxMessage = MessageBuilder.withPayload(dto).build();
-                    insertHandler.handleMessage(orderxMessage);
+        // chunkSize 件毎に1つの JDBC batch ( あるいは COPY ) で insert してコミットする
+        // delChannel にはコミット済で insert しなかったデータも含めて payload をそのまま渡して削除する
+        for (int i = 0; i < payload.size(); i += this.chunkSize) {
+            List<OrdersDto> chunk = excludeRecentlyCopied(
+                    payload.subList(i, Math.min(i + this.chunkSize, payload.size())));
+            if (chunk.isEmpty()) {
+                continue;
+            }
+            if (this.pgCopyEnabled && chunk.size() >= this.pgCopyMinRows) {
+                this.transactionTemplate.execute(status -> {
+                    addRecentlyCopiedAfterCommit(chunk);
+                    return copyIn(chunk);
+                });
+            } else {
+                this.transactionTemplate.execute(status -> {
+                    addRecentlyCopiedAfterCommit(chunk);
+                    return this.jdbcTemplate.batchUpdate(this.idempotentEnabled ? UPSERT_SQL : INSERT_SQL
+                            , chunk, chunk.size(), (ps, dto) -> ps.setString(1, dto.getOrderId()));
                 });
+            }
+        }
         return payload;
     }
+
+    private List<OrdersDto> excludeRecentlyCopied(List<OrdersDto> chunk) {
+        if (!this.idempotentEnabled) {
+            return chunk;
+        }
+        // get で参照して LRU の順序を更新する
+        return chunk.stream()
+                .filter(dto -> this.recentlyCopiedOrderIdMap.get(dto.getOrderId()) == null)
+                .collect(Collectors.toList());
+    }
+
+    private void addRecentlyCopiedAfterCommit(List<OrdersDto> chunk) {
+        if (!this.idempotentEnabled) {
+            return;
+        }
+        // ロールバックされた order_id を登録しないよう、コミットされてから登録する
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                chunk.forEach(dto -> recentlyCopiedOrderIdMap.put(dto.getOrderId(), Boolean.TRUE));
+            }
+        });
+    }
+
+    private long copyIn(List<OrdersDto> chunk) {
+        // JdbcTemplate#execute で取得するコネクションは transactionTemplate のトランザクションのコネクションになる
+        return this.jdbcTemplate.execute((ConnectionCallback<Long>) connection -> {
+            if (!this.idempotentEnabled) {
+                return writeCopy(connection, COPY_SQL, chunk);
+            }
+
+            PGConnection pgConnection = connection.unwrap(PGConnection.class);
+            try {
+                if (!this.stageTableCreatedConnectionSet.contains(pgConnection)) {
+                    try (Statement statement = connection.createStatement()) {
+                        statement.execute(CREATE_STAGE_TABLE_SQL);
+                    }
+                    this.stageTableCreatedConnectionSet.add(pgConnection);
+                }
+                long count = writeCopy(connection, COPY_STAGE_SQL, chunk);
+                try (Statement statement = connection.createStatement()) {
+                    statement.executeUpdate(UPSERT_FROM_STAGE_SQL);
+                }
+                return count;
+            } catch (SQLException | RuntimeException e) {
+                // ロールバックされるとこのトランザクションで作成した一時テーブルも削除されるので、次回作成し直す
+                this.stageTableCreatedConnectionSet.remove(pgConnection);
+                throw e;
+            }
+        });
+    }
+
+    private long writeCopy(Connection connection, String copySql, List<OrdersDto> chunk) throws SQLException {
+        CopyIn copyIn = openCopyIn(connection, copySql);
+        try {
+            // CSV 形式のデータを COPY_BUFFER_SIZE バイト毎に送信する
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(COPY_BUFFER_SIZE + 256);
+            for (OrdersDto dto : chunk) {
+                byte[] line = toCsvLine(dto);
+                buffer.write(line, 0, line.length);
+                if (buffer.size() >= COPY_BUFFER_SIZE) {
+                    copyIn.writeToCopy(buffer.toByteArray(), 0, buffer.size());
+                    buffer.reset();
+                }
+            }
+            if (buffer.size() > 0) {
+                copyIn.writeToCopy(buffer.toByteArray(), 0, buffer.size());
+            }
+            return copyIn.endCopy();
+        } finally {
+            if (copyIn.isActive()) {
+                copyIn.cancelCopy();
+            }
+        }
+    }
+
+    protected CopyIn openCopyIn(Connection connection, String sql) throws SQLException {
+        return connection.unwrap(PGConnection.class).getCopyAPI().copyIn(sql);
+    }
+
+    private byte[] toCsvLine(OrdersDto dto) {
+        // CSV 形式では、クォートしていない空の値が NULL になる
+        String line = dto.getOrderId() == null
+                ? "\n"
+                : "\"" + dto.getOrderId().replace("\"", "\"\"") + "\"\n";
+        return line.getBytes(StandardCharsets.UTF_8);
+    }
 }
@@ -1,39 +1,86 @@
 package ksbysample.eipapp.datacopy.integration.flow;
 
 import ksbysample.eipapp.datacopy.dto.OrdersDto;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.integration.annotation.MessageEndpoint;
 import org.springframework.integration.dsl.support.GenericHandler;
-import org.springframework.integration.jdbc.JdbcMessageHandler;
-import org.springframework.integration.support.MessageBuilder;
-import org.springframework.messaging.Message;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import javax.sql.DataSource;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
 
+/**
+ * copyChannel → ksbylending データベースへの insert が終わったデータを world データベースの orders テーブルから削除する。
+ * 削除した件数と、削除対象だったが削除できなかった ( status が '01' でなくなっていた、あるいは既に削除されていた )
+ * 件数を JMX の属性として公開する。
+ */
 @MessageEndpoint
+@ManagedResource
 public class DelOrdersMessageHandler implements GenericHandler<List<OrdersDto>> {
 
-    private final DataSource dataSource;
+    private static final String DELETE_SQL = "delete from orders where order_id in (:orderIds) and status = '01'";
 
-    public DelOrdersMessageHandler(@Qualifier("dataSourceWorld") DataSource dataSource) {
-        this.dataSource = dataSource;
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final int chunkSize;
+
+    private final AtomicLong deletedCount = new AtomicLong();
+
+    private final AtomicLong mismatchedCount = new AtomicLong();
+
+    public DelOrdersMessageHandler(@Qualifier("dataSourceWorld") DataSource dataSource
+            , @Qualifier("transactionManagerWorld") PlatformTransactionManager transactionManager
+            , @Value("${datacopy.del.chunk-size:1000}") int chunkSize) {
+        this.jdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.chunkSize = chunkSize;
     }
 
     @Override
-    @Transactional(transactionManager = "transactionManagerWorld")
     public Object handle(List<OrdersDto> payload, Map<String, Object> headers) {
-        JdbcMessageHandler deleteHandler
-                = new JdbcMessageHandler(this.dataSource
-                , "delete from orders where order_id = :payload.orderId and status = '01'");
-        deleteHandler.afterPropertiesSet();
-        payload.stream()
-                .forEach(dto -> {
-                    Message<OrdersDto> orderxMessage = MessageBuilder.withPayload(dto).build();
-                    deleteHandler.handleMessage(orderxMessage);
-                });
+        // chunkSize 件毎に1つの delete 文 ( order_id in (...) ) で削除してコミットする
+        int deletedCountInPayload = 0;
+        for (int i = 0; i < payload.size(); i += this.chunkSize) {
+            List<String> orderIdList = payload.subList(i, Math.min(i + this.chunkSize, payload.size())).stream()
+                    .map(OrdersDto::getOrderId)
+                    .collect(Collectors.toList());
+            int count = this.transactionTemplate.execute(status ->
+                    this.jdbcTemplate.update(DELETE_SQL, new MapSqlParameterSource("orderIds", orderIdList)));
+            if (count != orderIdList.size()) {
+                // status が '01' でなくなっている、あるいは既に削除されているデータがある
+                logger.warn("orders テーブルから削除したデータの件数が一致しません ( 削除対象 = {} 件, 削除 = {} 件, order_id = {} ～ {} )。"
+                        , orderIdList.size(), count, orderIdList.get(0), orderIdList.get(orderIdList.size() - 1));
+                this.mismatchedCount.addAndGet(orderIdList.size() - count);
+            }
+            this.deletedCount.addAndGet(count);
+            deletedCountInPayload += count;
+        }
+        logger.debug("orders テーブルから {} 件削除しました。", deletedCountInPayload);
         return null;
     }
+
+    @ManagedAttribute(description = "orders テーブルから削除した件数")
+    public long getDeletedCount() {
+        return this.deletedCount.get();
+    }
+
+    @ManagedAttribute(description = "削除対象だったが削除されなかった件数")
+    public long getMismatchedCount() {
+        return this.mismatchedCount.get();
+    }
 }
@@ -1,12 +1,18 @@
 package ksbysample.eipapp.datacopy.integration.flow;
 
 import ksbysample.eipapp.datacopy.dto.OrdersDtoRowMapper;
+import ksbysample.eipapp.datacopy.integration.channel.JournalChannel;
+import ksbysample.eipapp.datacopy.integration.channel.JournalChannelCommitAdvice;
+import ksbysample.eipapp.datacopy.integration.poller.AdaptivePollingTrigger;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.integration.core.MessageSource;
 import org.springframework.integration.dsl.IntegrationFlow;
 import org.springframework.integration.dsl.IntegrationFlows;
+import org.springframework.integration.dsl.core.PollerSpec;
 import org.springframework.integration.dsl.core.Pollers;
 import org.springframework.integration.jdbc.JdbcPollingChannelAdapter;
 import org.springframework.messaging.MessageChannel;
@@ -29,36 +35,66 @@ public class FlowConfig {
 
     private final DelOrdersMessageHandler delOrdersMessageHandler;
 
+    private final int maxRowsPerPoll;
+
+    private final long pollInterval;
+
+    private final long maxPollInterval;
+
     public FlowConfig(@Qualifier("dataSourceWorld") DataSource dataSourceWorld
             , @Qualifier("transactionManagerWorld") PlatformTransactionManager transactionManagerWorld
             , MessageChannel copyChannel
             , MessageChannel delChannel
             , CopyOrdersMessageHandler copyOrdersMessageHandler
-            , DelOrdersMessageHandler delOrdersMessageHandler) {
+            , DelOrdersMessageHandler delOrdersMessageHandler
+            , @Value("${datacopy.source.max-rows-per-poll:1000}") int maxRowsPerPoll
+            , @Value("${datacopy.source.poll-interval:1000}") long pollInterval
+            , @Value("${datacopy.source.max-poll-interval:30000}") long maxPollInterval) {
         this.dataSourceWorld = dataSourceWorld;
         this.transactionManagerWorld = transactionManagerWorld;
         this.copyChannel = copyChannel;
         this.delChannel = delChannel;
         this.copyOrdersMessageHandler = copyOrdersMessageHandler;
         this.delOrdersMessageHandler = delOrdersMessageHandler;
+        this.maxRowsPerPoll = maxRowsPerPoll;
+        this.pollInterval = pollInterval;
+        this.maxPollInterval = maxPollInterval;
     }
 
     @Bean
     public MessageSource<Object> ordersJdbcMessageSource() {
+        // 1回のポーリングで取得するのは order_id の昇順に maxRowsPerPoll 件まで。取得したデータは status を
+        // '01' に更新するので、次のポーリングではその続きのデータが取得される。orders テーブルに
+        // (status, order_id) のインデックスを作成しておけば、未処理のデータが大量に溜まっていても
+        // インデックスの範囲スキャンで先頭から maxRowsPerPoll 件だけ読まれる
         JdbcPollingChannelAdapter adapter
-                = new JdbcPollingChannelAdapter(this.dataSourceWorld, "select * from orders where status = '00'");
+                = new JdbcPollingChannelAdapter(this.dataSourceWorld
+                , "select order_id, status from orders where status = '00' order by order_id limit "
+                + this.maxRowsPerPoll);
         adapter.setRowMapper(new OrdersDtoRowMapper());
+        adapter.setMaxRowsPerPoll(this.maxRowsPerPoll);
         adapter.setUpdateSql("update orders set status = '01' where order_id in (:orderId)");
         return adapter;
     }
 
     @Bean
+    public AdaptivePollingTrigger ordersPollingTrigger() {
+        return new AdaptivePollingTrigger(this.pollInterval, this.maxPollInterval, this.maxRowsPerPoll);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "datacopy.partitioned-workers.enabled", havingValue = "false", matchIfMissing = true)
     public IntegrationFlow getFlow() {
         // MySQL の world データベースの orders テーブルから status = '00' のデータを
-        // 1秒間隔で取得して copyChannel にデータを渡す。取得したデータの status カラム
-        // は '00'→'01' に更新する。
+        // 最大 maxRowsPerPoll 件取得して copyChannel にデータを渡す。取得したデータの status カラム
+        // は '00'→'01' に更新する。maxRowsPerPoll 件取得できた場合はすぐに、データがなかった場合は
+        // 間隔を延ばしながら次のポーリングを行う。
+        // copyChannel への送信は world のトランザクションのコミット前に行われる。copyChannel がジャーナルの場合は
+        // コミットに失敗しても送信したデータが残り、status が '00' に戻ったデータと2重に処理されるので、
+        // ChannelConfig で冪等モード ( datacopy.copy.idempotent.enabled=true ) を必須にしている
         return IntegrationFlows.from(ordersJdbcMessageSource(),
-                c -> c.poller(Pollers.fixedRate(1000)
+                c -> c.poller(Pollers.trigger(ordersPollingTrigger())
+                        .advice(ordersPollingTrigger())
                         .transactional(this.transactionManagerWorld)))
                 .channel(this.copyChannel)
                 .get();
@@ -71,7 +107,7 @@ public class FlowConfig {
         // 場合にはデータをそのまま delChannel に渡す。
         return IntegrationFlows.from(this.copyChannel)
                 .handle(this.copyOrdersMessageHandler
-                        , c -> c.poller(Pollers.fixedRate(1000)))
+                        , c -> c.poller(channelPoller(this.copyChannel)))
                 .channel(this.delChannel)
                 .get();
     }
@@ -82,8 +118,17 @@ public class FlowConfig {
         // world データベースの orders テーブルのデータを delete する。
         return IntegrationFlows.from(this.delChannel)
                 .handle(this.delOrdersMessageHandler
-                        , c -> c.poller(Pollers.fixedRate(1000)))
+                        , c -> c.poller(channelPoller(this.delChannel)))
                 .get();
     }
 
+    private PollerSpec channelPoller(MessageChannel channel) {
+        PollerSpec pollerSpec = Pollers.fixedRate(1000);
+        if (channel instanceof JournalChannel) {
+            // handler が正常終了した時だけ受信したメッセージを処理済にする
+            pollerSpec.advice(new JournalChannelCommitAdvice((JournalChannel<?>) channel));
+        }
+        return pollerSpec;
+    }
+
 }
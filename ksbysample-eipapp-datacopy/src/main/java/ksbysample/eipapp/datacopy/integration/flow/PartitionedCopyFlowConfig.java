@@ -0,0 +1,94 @@
+package ksbysample.eipapp.datacopy.integration.flow;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.integration.dsl.IntegrationFlow;
+import org.springframework.integration.dsl.IntegrationFlows;
+import org.springframework.integration.dsl.core.Pollers;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.sql.DataSource;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * datacopy.partitioned-workers.enabled=true の場合に、FlowConfig#getFlow の代わりに使用するフロー。
+ * datacopy.partitioned-workers.count 個のスレッドが select ... for update skip locked で互いに重ならないデータを取得し、
+ * copyChannel, delChannel を経由せずに同じスレッドで insert → delete まで行う。
+ * 取得したデータの status = '01' への更新は insert の前にコミットされるので、insert, delete が失敗したデータは
+ * '01' のまま残る。datacopy.recovery.sweeper.enabled=true ( StaleClaimedOrdersSweeper ) と一緒に使用すること。
+ */
+@Configuration
+@ConditionalOnProperty(name = "datacopy.partitioned-workers.enabled", havingValue = "true")
+public class PartitionedCopyFlowConfig {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final DataSource dataSourceWorld;
+
+    private final PlatformTransactionManager transactionManagerWorld;
+
+    private final CopyOrdersMessageHandler copyOrdersMessageHandler;
+
+    private final DelOrdersMessageHandler delOrdersMessageHandler;
+
+    private final int workerCount;
+
+    private final int maxRowsPerPoll;
+
+    public PartitionedCopyFlowConfig(@Qualifier("dataSourceWorld") DataSource dataSourceWorld
+            , @Qualifier("transactionManagerWorld") PlatformTransactionManager transactionManagerWorld
+            , CopyOrdersMessageHandler copyOrdersMessageHandler
+            , DelOrdersMessageHandler delOrdersMessageHandler
+            , @Value("${datacopy.partitioned-workers.count:4}") int workerCount
+            , @Value("${datacopy.source.max-rows-per-poll:1000}") int maxRowsPerPoll
+            , @Value("${datacopy.recovery.sweeper.enabled:false}") boolean sweeperEnabled) {
+        if (!sweeperEnabled) {
+            logger.warn("datacopy.recovery.sweeper.enabled=false のため、insert, delete に失敗したデータは"
+                    + " status = '01' のまま残り、再処理されません。");
+        }
+        this.dataSourceWorld = dataSourceWorld;
+        this.transactionManagerWorld = transactionManagerWorld;
+        this.copyOrdersMessageHandler = copyOrdersMessageHandler;
+        this.delOrdersMessageHandler = delOrdersMessageHandler;
+        this.workerCount = workerCount;
+        this.maxRowsPerPoll = maxRowsPerPoll;
+    }
+
+    @Bean
+    public PartitionedOrdersMessageSource partitionedOrdersMessageSource() {
+        return new PartitionedOrdersMessageSource(this.dataSourceWorld, this.transactionManagerWorld
+                , this.maxRowsPerPoll);
+    }
+
+    @Bean
+    public ThreadPoolTaskExecutor copyWorkerTaskExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(this.workerCount);
+        executor.setMaxPoolSize(this.workerCount);
+        executor.setQueueCapacity(0);
+        executor.setThreadNamePrefix("copyWorker-");
+        // 全スレッドが処理中の時はそのポーリングをスキップする
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.DiscardPolicy());
+        return executor;
+    }
+
+    @Bean
+    public IntegrationFlow partitionedCopyFlow() {
+        // 1秒間隔で空いているスレッドにポーリングさせる。各スレッドはデータが取得できなくなるまで
+        // 取得 → ksbylending データベースへの insert → world データベースからの delete を繰り返す
+        return IntegrationFlows.from(partitionedOrdersMessageSource(),
+                c -> c.poller(Pollers.fixedRate(1000)
+                        .taskExecutor(copyWorkerTaskExecutor())
+                        .maxMessagesPerPoll(-1)))
+                .handle(this.copyOrdersMessageHandler)
+                .handle(this.delOrdersMessageHandler)
+                .get();
+    }
+
+}
@@ -0,0 +1,65 @@
+package ksbysample.eipapp.datacopy.integration.flow;
+
+import ksbysample.eipapp.datacopy.dto.OrdersDto;
+import ksbysample.eipapp.datacopy.dto.OrdersDtoRowMapper;
+import org.springframework.integration.core.MessageSource;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.messaging.Message;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * world データベースの orders テーブルの status = '00' のデータを、複数のスレッドで重ならないように取得する
+ * MessageSource。
+ * receive が呼ばれる度に order_id の昇順に最大 maxRows 件を select ... for update skip locked で取得して
+ * status を '01' に更新し、コミットしてから返す。他のスレッドがロックしている行は待たずに読み飛ばすので、
+ * 各スレッドは (status, order_id) のインデックスの先頭から互いに重ならないデータを取得する。
+ * skip locked は MySQL 8.0.1 以降でないと使用できない。
+ */
+public class PartitionedOrdersMessageSource implements MessageSource<List<OrdersDto>> {
+
+    private static final String SELECT_SQL
+            = "select order_id, status from orders"
+            + " where status = '00'"
+            + " order by order_id limit :maxRows for update skip locked";
+
+    private static final String UPDATE_SQL = "update orders set status = '01' where order_id in (:orderIds)";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final int maxRows;
+
+    public PartitionedOrdersMessageSource(DataSource dataSource, PlatformTransactionManager transactionManager
+            , int maxRows) {
+        this.jdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        // REPEATABLE READ ( InnoDB のデフォルト ) ではギャップロックも取得されるので、READ COMMITTED にする
+        this.transactionTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_READ_COMMITTED);
+        this.maxRows = maxRows;
+    }
+
+    @Override
+    public Message<List<OrdersDto>> receive() {
+        List<OrdersDto> ordersDtoList = this.transactionTemplate.execute(status -> {
+            List<OrdersDto> list = this.jdbcTemplate.query(SELECT_SQL
+                    , new MapSqlParameterSource("maxRows", this.maxRows)
+                    , new OrdersDtoRowMapper());
+            if (!list.isEmpty()) {
+                this.jdbcTemplate.update(UPDATE_SQL, new MapSqlParameterSource("orderIds"
+                        , list.stream().map(OrdersDto::getOrderId).collect(Collectors.toList())));
+            }
+            return list;
+        });
+        return ordersDtoList.isEmpty() ? null : MessageBuilder.withPayload(ordersDtoList).build();
+    }
+
+}
@@ -0,0 +1,124 @@
+package ksbysample.eipapp.datacopy.integration.flow;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * world データベースの orders テーブルで status = '01' のまま残っているデータ ( 取得後に copy, del が失敗した、
+ * あるいは処理中にアプリケーションが停止して QueueChannel のメッセージが失われたもの ) を '00' に戻し、
+ * 再度ポーリングで取得させる。
+ * <ul>
+ * <li>orders テーブルには取得した日時がないので、datacopy.recovery.sweeper.interval 毎に status = '01' の
+ * order_id を記録し、前回も '01' だった ( interval 以上 '01' のままの ) データだけを戻す。interval は
+ * 取得 → del までに掛かる時間より十分長くすること。</li>
+ * <li>前回も '01' だったデータには、ジャーナルや QueueChannel に溜まっていて処理を待っているだけのデータも含まれる。
+ * 戻したデータは2回処理され、ksbylending データベースに insert 済の場合もあるので、
+ * datacopy.copy.idempotent.enabled=true でなければ起動時にエラーにする。</li>
+ * <li>メモリ使用量を抑えるため、1回で確認するのは order_id の昇順に datacopy.recovery.sweeper.max-rows 件まで。
+ * 戻したデータ・削除されたデータの分だけ次回はその続きのデータが確認される。</li>
+ * </ul>
+ */
+@Component
+@ConditionalOnProperty(name = "datacopy.recovery.sweeper.enabled", havingValue = "true")
+public class StaleClaimedOrdersSweeper {
+
+    private static final String SELECT_FIRST_PAGE_SQL
+            = "select order_id from orders where status = '01' order by order_id limit :limit";
+
+    private static final String SELECT_NEXT_PAGE_SQL
+            = "select order_id from orders where status = '01' and order_id > :lastOrderId"
+            + " order by order_id limit :limit";
+
+    private static final String UPDATE_SQL
+            = "update orders set status = '00' where order_id in (:orderIds) and status = '01'";
+
+    private static final int CHUNK_SIZE = 1000;
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final int maxRows;
+
+    private Set<String> previousClaimedOrderIdSet = new HashSet<>();
+
+    /**
+     * @param maxRows 1回の sweep で確認する status = '01' のデータの最大件数
+     */
+    public StaleClaimedOrdersSweeper(@Qualifier("dataSourceWorld") DataSource dataSource
+            , @Qualifier("transactionManagerWorld") PlatformTransactionManager transactionManager
+            , @Value("${datacopy.recovery.sweeper.max-rows:100000}") int maxRows
+            , @Value("${datacopy.copy.idempotent.enabled:false}") boolean idempotentEnabled) {
+        if (!idempotentEnabled) {
+            throw new IllegalStateException(
+                    "datacopy.recovery.sweeper.enabled=true の場合は datacopy.copy.idempotent.enabled=true を設定してください。");
+        }
+        this.jdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.maxRows = maxRows;
+    }
+
+    @Scheduled(initialDelayString = "${datacopy.recovery.sweeper.interval:600000}"
+            , fixedDelayString = "${datacopy.recovery.sweeper.interval:600000}")
+    public void sweep() {
+        Set<String> claimedOrderIdSet = new HashSet<>();
+        int resetCount = 0;
+        int scannedRows = 0;
+        String lastOrderId = null;
+        while (scannedRows < this.maxRows) {
+            // order_id の keyset で CHUNK_SIZE 件ずつ読み込む
+            int limit = Math.min(CHUNK_SIZE, this.maxRows - scannedRows);
+            MapSqlParameterSource params = new MapSqlParameterSource("limit", limit);
+            List<String> orderIdList = lastOrderId == null
+                    ? this.jdbcTemplate.queryForList(SELECT_FIRST_PAGE_SQL, params, String.class)
+                    : this.jdbcTemplate.queryForList(SELECT_NEXT_PAGE_SQL
+                    , params.addValue("lastOrderId", lastOrderId), String.class);
+            if (orderIdList.isEmpty()) {
+                break;
+            }
+            lastOrderId = orderIdList.get(orderIdList.size() - 1);
+            scannedRows += orderIdList.size();
+
+            List<String> staleOrderIdList = orderIdList.stream()
+                    .filter(this.previousClaimedOrderIdSet::contains)
+                    .collect(Collectors.toList());
+            if (!staleOrderIdList.isEmpty()) {
+                resetCount += this.transactionTemplate.execute(status ->
+                        this.jdbcTemplate.update(UPDATE_SQL, new MapSqlParameterSource("orderIds", staleOrderIdList)));
+            }
+            orderIdList.stream()
+                    .filter(orderId -> !this.previousClaimedOrderIdSet.contains(orderId))
+                    .forEach(claimedOrderIdSet::add);
+            if (orderIdList.size() < limit) {
+                break;
+            }
+        }
+        if (scannedRows >= this.maxRows) {
+            logger.info("status = '01' のデータが {} 件以上あるため、order_id = {} より後のデータは次回以降に確認します。"
+                    , this.maxRows, lastOrderId);
+        }
+        if (resetCount > 0) {
+            logger.warn("status = '01' のまま残っていた orders テーブルのデータ {} 件を '00' に戻しました。", resetCount);
+        }
+
+        this.previousClaimedOrderIdSet = claimedOrderIdSet;
+    }
+
+}
@@ -0,0 +1,119 @@
+package ksbysample.eipapp.datacopy.integration.poller;
+
+import org.springframework.integration.aop.AbstractMessageSourceAdvice;
+import org.springframework.integration.core.MessageSource;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.messaging.Message;
+import org.springframework.scheduling.Trigger;
+import org.springframework.scheduling.TriggerContext;
+
+import java.util.Collection;
+import java.util.Date;
+
+/**
+ * JdbcPollingChannelAdapter 等の MessageSource のポーリング間隔を、直前のポーリングの結果に応じて変更する Trigger。
+ * <ul>
+ * <li>1回で取得する最大件数 ( fullPageSize ) のデータを取得した場合には、まだデータが残っているのですぐに次の
+ * ポーリングを行う。</li>
+ * <li>データを取得したが fullPageSize 件未満の場合には baseInterval ミリ秒後に次のポーリングを行う。</li>
+ * <li>データがなかった場合には間隔を2倍ずつ延ばしていく ( 最大 maxInterval ミリ秒 )。</li>
+ * </ul>
+ * ポーリングの結果を受け取るため、poller の advice にも同じインスタンスを指定すること
+ * ( Pollers.trigger(trigger).advice(trigger) )。
+ */
+@ManagedResource
+public class AdaptivePollingTrigger extends AbstractMessageSourceAdvice implements Trigger {
+
+    private final long baseInterval;
+
+    private final long maxInterval;
+
+    private final int fullPageSize;
+
+    private long currentInterval;
+
+    // 前回 nextExecutionTime が呼ばれてから ( 1回のポーリングの中で ) の結果
+    private boolean hasData = false;
+
+    private boolean hasFullPage = false;
+
+    private long pollCount = 0;
+
+    private long hitCount = 0;
+
+    /**
+     * @param baseInterval データを取得した時のポーリング間隔 ( ミリ秒 )
+     * @param maxInterval  データがない時に延ばすポーリング間隔の上限 ( ミリ秒 )
+     * @param fullPageSize 1回で取得する最大件数。0 以下の場合にはすぐに次のポーリングを行うことはしない
+     */
+    public AdaptivePollingTrigger(long baseInterval, long maxInterval, int fullPageSize) {
+        this.baseInterval = baseInterval;
+        this.maxInterval = Math.max(maxInterval, baseInterval);
+        this.fullPageSize = fullPageSize;
+        this.currentInterval = baseInterval;
+    }
+
+    @Override
+    public boolean beforeReceive(MessageSource<?> source) {
+        return true;
+    }
+
+    @Override
+    public synchronized Message<?> afterReceive(Message<?> result, MessageSource<?> source) {
+        this.pollCount++;
+        if (result != null) {
+            this.hitCount++;
+            this.hasData = true;
+            // JdbcPollingChannelAdapter は取得したデータを List で payload にセットする
+            Object payload = result.getPayload();
+            int size = payload instanceof Collection ? ((Collection<?>) payload).size() : 1;
+            if (this.fullPageSize > 0 && size >= this.fullPageSize) {
+                this.hasFullPage = true;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized Date nextExecutionTime(TriggerContext triggerContext) {
+        Date lastCompletionTime = triggerContext.lastCompletionTime();
+        if (lastCompletionTime == null) {
+            return new Date();
+        }
+
+        if (this.hasFullPage) {
+            this.currentInterval = 0;
+        } else if (this.hasData) {
+            this.currentInterval = this.baseInterval;
+        } else {
+            this.currentInterval = this.currentInterval < this.baseInterval
+                    ? this.baseInterval
+                    : Math.min(this.currentInterval * 2, this.maxInterval);
+        }
+        this.hasData = false;
+        this.hasFullPage = false;
+        return new Date(lastCompletionTime.getTime() + this.currentInterval);
+    }
+
+    @ManagedAttribute(description = "現在のポーリング間隔 ( ミリ秒 )")
+    public synchronized long getCurrentInterval() {
+        return this.currentInterval;
+    }
+
+    @ManagedAttribute(description = "receive を呼び出した回数")
+    public synchronized long getPollCount() {
+        return this.pollCount;
+    }
+
+    @ManagedAttribute(description = "データを取得できた回数")
+    public synchronized long getHitCount() {
+        return this.hitCount;
+    }
+
+    @ManagedAttribute(description = "データを取得できた割合")
+    public synchronized double getHitRatio() {
+        return this.pollCount == 0 ? 0 : this.hitCount / (double) this.pollCount;
+    }
+
+}
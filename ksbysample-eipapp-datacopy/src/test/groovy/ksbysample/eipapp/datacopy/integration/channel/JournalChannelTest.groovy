@@ -0,0 +1,85 @@
+package ksbysample.eipapp.datacopy.integration.channel
+
+import ksbysample.eipapp.datacopy.dto.OrdersDto
+import org.junit.Rule
+import org.junit.rules.TemporaryFolder
+import org.springframework.integration.support.MessageBuilder
+import spock.lang.Specification
+
+class JournalChannelTest extends Specification {
+
+    static final int MAX_DELIVERY_ATTEMPTS = 3
+
+    @Rule
+    TemporaryFolder temporaryFolder = new TemporaryFolder()
+
+    MappedSegmentJournal deadLetterJournal
+
+    JournalChannel<List<OrdersDto>> channel
+
+    def setup() {
+        deadLetterJournal = open("copyChannel-dead-letter")
+        channel = new JournalChannel<>(open("copyChannel"), new OrdersDtoListCodec()
+                , deadLetterJournal, MAX_DELIVERY_ATTEMPTS)
+    }
+
+    def cleanup() {
+        channel.destroy()
+    }
+
+    def "処理が maxDeliveryAttempts 回失敗したメッセージはデッドレターに移動され、次のメッセージを受信する"() {
+        given:
+        channel.send(MessageBuilder.withPayload([orders("1")]).build())
+        channel.send(MessageBuilder.withPayload([orders("2")]).build())
+
+        when: "maxDeliveryAttempts - 1 回までは同じメッセージを再度受信する"
+        def receivedList = (1..<MAX_DELIVERY_ATTEMPTS).collect {
+            def payload = channel.receive(0).payload
+            channel.rollback()
+            payload
+        }
+
+        then:
+        receivedList*.orderId == [["1"], ["1"]]
+        deadLetterJournal.read(0) == null
+
+        when:
+        channel.receive(0)
+        channel.rollback()
+
+        then:
+        channel.receive(0).payload*.orderId == ["2"]
+        new OrdersDtoListCodec().decode(deadLetterJournal.read(0))*.orderId == ["1"]
+    }
+
+    def "commit すると失敗した回数は 0 に戻る"() {
+        given:
+        (1..2).each { channel.send(MessageBuilder.withPayload([orders("$it")]).build()) }
+
+        when:
+        (1..<MAX_DELIVERY_ATTEMPTS).each {
+            channel.receive(0)
+            channel.rollback()
+        }
+        channel.receive(0)
+        channel.commit()
+        channel.receive(0)
+        channel.rollback()
+
+        then:
+        channel.receive(0).payload*.orderId == ["2"]
+        deadLetterJournal.read(0) == null
+    }
+
+    MappedSegmentJournal open(String name) {
+        new MappedSegmentJournal(temporaryFolder.root.toPath().resolve(name), 1024, FsyncPolicy.PER_MESSAGE, 1, 1000)
+    }
+
+    static OrdersDto orders(String orderId) {
+        def dto = new OrdersDto()
+        dto.orderId = orderId
+        dto.status = "00"
+        dto
+    }
+
+}
@@ -0,0 +1,203 @@
+package ksbysample.eipapp.datacopy.integration.channel
+
+import org.junit.Rule
+import org.junit.rules.TemporaryFolder
+import spock.lang.Specification
+
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+import java.nio.file.Path
+
+class MappedSegmentJournalTest extends Specification {
+
+    // "record-N" ( 8 バイト ) のレコードは 16 バイト、終端を含めて 1セグメントに 3件入る
+    static final int SMALL_SEGMENT_SIZE = 52
+
+    @Rule
+    TemporaryFolder temporaryFolder = new TemporaryFolder()
+
+    Path dir
+
+    MappedSegmentJournal journal
+
+    def setup() {
+        dir = temporaryFolder.newFolder("journal").toPath()
+    }
+
+    def cleanup() {
+        journal?.close()
+    }
+
+    def "セグメントをまたいで append, read, commit できる"() {
+        given:
+        journal = open(SMALL_SEGMENT_SIZE)
+        (1..7).each { journal.append(bytes("record-$it")) }
+
+        when:
+        def readList = (1..7).collect { string(journal.read(0)) }
+        journal.commit()
+
+        then:
+        readList == (1..7).collect { "record-$it" as String }
+        journal.read(0) == null
+        segmentFileNames() == ["00000000000000000002.seg"]
+    }
+
+    def "commit していないデータは rollback すると再度読み込まれる"() {
+        given:
+        journal = open(SMALL_SEGMENT_SIZE)
+        (1..5).each { journal.append(bytes("record-$it")) }
+        journal.read(0)
+        journal.commit()
+
+        when:
+        def first = (2..5).collect { string(journal.read(0)) }
+        journal.rollback()
+        def second = (2..5).collect { string(journal.read(0)) }
+
+        then:
+        first == second
+        journal.read(0) == null
+    }
+
+    def "commit していないデータは再起動後に再度読み込まれる"() {
+        given:
+        journal = open(SMALL_SEGMENT_SIZE)
+        (1..4).each { journal.append(bytes("record-$it")) }
+        journal.read(0)
+        journal.commit()
+        journal.read(0)
+        journal.close()
+
+        when:
+        journal = open(SMALL_SEGMENT_SIZE)
+
+        then:
+        (2..4).collect { string(journal.read(0)) } == ["record-2", "record-3", "record-4"]
+    }
+
+    def "書き込み途中で壊れた ( CRC32 が一致しない ) 最後のレコードは起動時に破棄される"() {
+        given:
+        journal = open(1024)
+        (1..3).each { journal.append(bytes("record-$it")) }
+        journal.close()
+        // 3件目のレコード ( 位置 32 ) のデータを書き換える
+        overwrite(dir.resolve("00000000000000000000.seg"), 32 + 8, bytes("X"))
+
+        when:
+        journal = open(1024)
+
+        then:
+        string(journal.read(0)) == "record-1"
+        string(journal.read(0)) == "record-2"
+        journal.read(0) == null
+
+        when: "破棄した位置から書き込まれる"
+        journal.append(bytes("record-4"))
+
+        then:
+        string(journal.read(0)) == "record-4"
+        journal.read(0) == null
+    }
+
+    def "checkpoint が削除済のセグメントを指している場合は残っている最初のセグメントから読み込む"() {
+        given:
+        journal = open(SMALL_SEGMENT_SIZE)
+        (1..7).each { journal.append(bytes("record-$it")) }
+        (1..4).each { journal.read(0) }
+        journal.commit()
+        journal.close()
+        // compaction 後、checkpoint を同期する前にクラッシュした状態にする
+        def checkpoint = new ByteArrayOutputStream()
+        new DataOutputStream(checkpoint).with {
+            writeLong(0)
+            writeInt(32)
+        }
+        overwrite(dir.resolve("checkpoint"), 0, checkpoint.toByteArray())
+
+        when:
+        journal = open(SMALL_SEGMENT_SIZE)
+
+        then:
+        (4..7).collect { string(journal.read(0)) } == ["record-4", "record-5", "record-6", "record-7"]
+        journal.read(0) == null
+    }
+
+    def "rollback した回数は再起動後も引き継がれ、commit すると 0 に戻る"() {
+        given:
+        journal = open(SMALL_SEGMENT_SIZE)
+        (1..3).each { journal.append(bytes("record-$it")) }
+
+        expect: "読み込んでいない場合は回数を増やさない"
+        journal.rollback() == 0
+
+        when:
+        journal.read(0)
+        journal.rollback()
+        journal.read(0)
+        journal.rollback()
+        journal.close()
+        journal = open(SMALL_SEGMENT_SIZE)
+
+        then:
+        string(journal.read(0)) == "record-1"
+        journal.rollback() == 3
+
+        when:
+        journal.read(0)
+        journal.commit()
+        journal.read(0)
+
+        then:
+        journal.rollback() == 1
+    }
+
+    def "全て commit されたセグメントは削除される"() {
+        given:
+        journal = open(SMALL_SEGMENT_SIZE)
+        (1..7).each { journal.append(bytes("record-$it")) }
+
+        expect:
+        segmentFileNames() == ["00000000000000000000.seg", "00000000000000000001.seg", "00000000000000000002.seg"]
+
+        when:
+        (1..3).each { journal.read(0) }
+        journal.commit()
+
+        then: "セグメントの最後のレコードまで読んだだけではまだ削除されない"
+        segmentFileNames() == ["00000000000000000000.seg", "00000000000000000001.seg", "00000000000000000002.seg"]
+
+        when:
+        journal.read(0)
+        journal.commit()
+
+        then:
+        segmentFileNames() == ["00000000000000000001.seg", "00000000000000000002.seg"]
+    }
+
+    MappedSegmentJournal open(int segmentSize) {
+        new MappedSegmentJournal(dir, segmentSize, FsyncPolicy.PER_MESSAGE, 1, 1000)
+    }
+
+    List<String> segmentFileNames() {
+        Files.list(dir).withCloseable { stream ->
+            stream.iterator().collect { it.fileName.toString() }.findAll { it.endsWith(".seg") }.sort()
+        }
+    }
+
+    static void overwrite(Path file, long pos, byte[] data) {
+        new RandomAccessFile(file.toFile(), "rw").withCloseable {
+            it.seek(pos)
+            it.write(data)
+        }
+    }
+
+    static byte[] bytes(String value) {
+        value.getBytes(StandardCharsets.UTF_8)
+    }
+
+    static String string(byte[] data) {
+        data == null ? null : new String(data, StandardCharsets.UTF_8)
+    }
+
+}
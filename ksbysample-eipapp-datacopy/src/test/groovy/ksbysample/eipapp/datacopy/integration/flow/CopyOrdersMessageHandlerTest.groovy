@@ -0,0 +1,203 @@
+package ksbysample.eipapp.datacopy.integration.flow
+
+import ksbysample.eipapp.datacopy.dto.OrdersDto
+import org.postgresql.PGConnection
+import org.postgresql.copy.CopyIn
+import org.springframework.dao.DataAccessException
+import org.springframework.transaction.PlatformTransactionManager
+import org.springframework.transaction.TransactionDefinition
+import org.springframework.transaction.support.AbstractPlatformTransactionManager
+import org.springframework.transaction.support.DefaultTransactionStatus
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import javax.sql.DataSource
+import java.sql.Connection
+import java.sql.DatabaseMetaData
+import java.sql.PreparedStatement
+import java.sql.SQLException
+import java.sql.Statement
+
+class CopyOrdersMessageHandlerTest extends Specification {
+
+    static final String CREATE_STAGE_TABLE_SQL = "create temporary table if not exists orders_copy_stage on commit delete rows as select order_id from orders with no data"
+
+    static final String COPY_STAGE_SQL = "copy orders_copy_stage (order_id) from stdin with (format csv)"
+
+    static final String UPSERT_FROM_STAGE_SQL = "insert into orders (order_id) select order_id from orders_copy_stage on conflict (order_id) do nothing"
+
+    DataSource dataSource = Stub()
+
+    Connection connection = Mock()
+
+    PreparedStatement preparedStatement = Mock()
+
+    Statement statement = Mock()
+
+    CopyIn copyIn = Mock()
+
+    // afterCommit が呼び出されるよう、トランザクション同期を行う TransactionManager を使用する
+    PlatformTransactionManager transactionManager = new NoOpTransactionManager()
+
+    List<String> copySqlList = []
+
+    def setup() {
+        DatabaseMetaData metaData = Stub()
+        metaData.supportsBatchUpdates() >> true
+        dataSource.getConnection() >> connection
+        connection.getMetaData() >> metaData
+        connection.unwrap(PGConnection) >> Stub(PGConnection)
+        connection.createStatement() >> statement
+        preparedStatement.getConnection() >> connection
+    }
+
+    @Unroll
+    def "idempotentEnabled = #idempotentEnabled の場合は #sql で batch insert する"() {
+        given:
+        def handler = new CopyOrdersMessageHandler(dataSource, transactionManager, 1000, false, 500, idempotentEnabled, 100)
+
+        when:
+        handler.handle(ordersDtoList("0001", "0002", "0003"), [:])
+
+        then:
+        1 * connection.prepareStatement(sql) >> preparedStatement
+        3 * preparedStatement.addBatch()
+        1 * preparedStatement.executeBatch() >> ([1, 1, 1] as int[])
+
+        where:
+        idempotentEnabled || sql
+        false             || "insert into orders (order_id) values (?)"
+        true              || "insert into orders (order_id) values (?) on conflict (order_id) do nothing"
+    }
+
+    def "冪等モードの COPY は一時テーブルに COPY してから insert し、一時テーブルはコネクション毎に1度だけ作成する"() {
+        given:
+        def handler = copyHandler()
+
+        when:
+        handler.handle(ordersDtoList("0001", "0002", "0003"), [:])
+        handler.handle(ordersDtoList("0004"), [:])
+
+        then:
+        1 * statement.execute(CREATE_STAGE_TABLE_SQL)
+        3 * statement.executeUpdate(UPSERT_FROM_STAGE_SQL)
+        copySqlList == [COPY_STAGE_SQL] * 3
+    }
+
+    def "一時テーブルを作成したトランザクションが失敗した場合は次回作成し直す"() {
+        given:
+        def handler = copyHandler()
+
+        when:
+        handler.handle(ordersDtoList("0001"), [:])
+
+        then:
+        1 * statement.execute(CREATE_STAGE_TABLE_SQL)
+        1 * statement.executeUpdate(UPSERT_FROM_STAGE_SQL) >> { throw new SQLException("error") }
+        thrown(DataAccessException)
+
+        when:
+        handler.handle(ordersDtoList("0001"), [:])
+
+        then:
+        1 * statement.execute(CREATE_STAGE_TABLE_SQL)
+        1 * statement.executeUpdate(UPSERT_FROM_STAGE_SQL)
+    }
+
+    def "冪等モードではコミット済の order_id は再処理されても insert しない"() {
+        given:
+        def handler = new CopyOrdersMessageHandler(dataSource, transactionManager, 2, false, 500, true, 100)
+        connection.prepareStatement(_) >> preparedStatement
+
+        when: "2つ目のチャンクがロールバックされる"
+        handler.handle(ordersDtoList("0001", "0002", "0003", "0004"), [:])
+
+        then:
+        2 * preparedStatement.executeBatch() >> ([1, 1] as int[]) >> { throw new SQLException("error") }
+        thrown(DataAccessException)
+
+        when: "同じメッセージを再処理する"
+        handler.handle(ordersDtoList("0001", "0002", "0003", "0004"), [:])
+
+        then: "コミット済の1つ目のチャンクは insert せず、ロールバックされた2つ目のチャンクだけ insert する"
+        0 * preparedStatement.setString(1, "0001")
+        0 * preparedStatement.setString(1, "0002")
+        1 * preparedStatement.setString(1, "0003")
+        1 * preparedStatement.setString(1, "0004")
+        1 * preparedStatement.executeBatch() >> ([1, 1] as int[])
+
+        when: "全てコミット済の場合は SQL を実行しない"
+        def result = handler.handle(ordersDtoList("0001", "0002", "0003", "0004"), [:])
+
+        then:
+        0 * preparedStatement.executeBatch()
+        result*.orderId == ["0001", "0002", "0003", "0004"]
+    }
+
+    def "コミット済の order_id は lruSize 件まで保持する"() {
+        given:
+        def handler = new CopyOrdersMessageHandler(dataSource, transactionManager, 1, false, 500, true, 2)
+        connection.prepareStatement(_) >> preparedStatement
+        preparedStatement.executeBatch() >> ([1] as int[])
+        handler.handle(ordersDtoList("0001", "0002", "0003"), [:])
+
+        when:
+        handler.handle(ordersDtoList("0001", "0002", "0003"), [:])
+
+        then: "最も古い 0001 だけが LRU から削除されている"
+        1 * preparedStatement.setString(1, "0001")
+        0 * preparedStatement.setString(1, "0002")
+        0 * preparedStatement.setString(1, "0003")
+    }
+
+    def "冪等モードでない場合はコミット済の order_id も insert する"() {
+        given:
+        def handler = new CopyOrdersMessageHandler(dataSource, transactionManager, 1000, false, 500, false, 100)
+        connection.prepareStatement(_) >> preparedStatement
+        preparedStatement.executeBatch() >> ([1] as int[])
+        handler.handle(ordersDtoList("0001"), [:])
+
+        when:
+        handler.handle(ordersDtoList("0001"), [:])
+
+        then:
+        1 * preparedStatement.setString(1, "0001")
+    }
+
+    CopyOrdersMessageHandler copyHandler() {
+        // chunkSize = 2, COPY で登録する最小件数 = 1
+        new CopyOrdersMessageHandler(dataSource, transactionManager, 2, true, 1, true, 100) {
+            @Override
+            protected CopyIn openCopyIn(Connection connection, String sql) {
+                copySqlList << sql
+                copyIn
+            }
+        }
+    }
+
+    static List<OrdersDto> ordersDtoList(String... orderIds) {
+        orderIds.collect { new OrdersDto(orderId: it, status: "01") }
+    }
+
+    static class NoOpTransactionManager extends AbstractPlatformTransactionManager {
+
+        @Override
+        protected Object doGetTransaction() {
+            new Object()
+        }
+
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition) {
+        }
+
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) {
+        }
+
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) {
+        }
+
+    }
+
+}
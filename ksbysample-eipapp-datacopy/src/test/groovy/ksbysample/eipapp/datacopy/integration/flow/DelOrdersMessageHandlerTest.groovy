@@ -0,0 +1,56 @@
+package ksbysample.eipapp.datacopy.integration.flow
+
+import org.springframework.transaction.PlatformTransactionManager
+import spock.lang.Specification
+
+import javax.sql.DataSource
+import java.sql.Connection
+import java.sql.PreparedStatement
+
+import static ksbysample.eipapp.datacopy.integration.flow.CopyOrdersMessageHandlerTest.ordersDtoList
+
+class DelOrdersMessageHandlerTest extends Specification {
+
+    DataSource dataSource = Stub()
+
+    Connection connection = Stub()
+
+    PreparedStatement preparedStatement = Mock()
+
+    PlatformTransactionManager transactionManager = new CopyOrdersMessageHandlerTest.NoOpTransactionManager()
+
+    def setup() {
+        dataSource.getConnection() >> connection
+        connection.prepareStatement(_) >> preparedStatement
+        preparedStatement.getConnection() >> connection
+    }
+
+    def "削除した件数と削除できなかった件数を chunk 毎に集計する"() {
+        given:
+        // chunkSize = 2
+        def handler = new DelOrdersMessageHandler(dataSource, transactionManager, 2)
+
+        when:
+        handler.handle(ordersDtoList("0001", "0002", "0003", "0004", "0005"), [:])
+
+        then:
+        3 * preparedStatement.executeUpdate() >>> [2, 1, 0]
+        handler.deletedCount == 3
+        handler.mismatchedCount == 2
+    }
+
+    def "件数は handle を呼び出す毎に累積される"() {
+        given:
+        def handler = new DelOrdersMessageHandler(dataSource, transactionManager, 1000)
+        preparedStatement.executeUpdate() >>> [3, 2]
+
+        when:
+        handler.handle(ordersDtoList("0001", "0002", "0003"), [:])
+        handler.handle(ordersDtoList("0004", "0005", "0006"), [:])
+
+        then:
+        handler.deletedCount == 5
+        handler.mismatchedCount == 1
+    }
+
+}
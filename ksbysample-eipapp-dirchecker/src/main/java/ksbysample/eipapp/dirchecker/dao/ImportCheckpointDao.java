@@ -0,0 +1,44 @@
+package ksbysample.eipapp.dirchecker.dao;
+
+import ksbysample.eipapp.dirchecker.entity.ImportCheckpoint;
+import ksbysample.eipapp.dirchecker.util.doma.ComponentAndAutowiredDomaConfig;
+import org.seasar.doma.Dao;
+import org.seasar.doma.Delete;
+import org.seasar.doma.Insert;
+import org.seasar.doma.Select;
+import org.seasar.doma.Update;
+
+/**
+ */
+@Dao
+@ComponentAndAutowiredDomaConfig
+public interface ImportCheckpointDao {
+
+    /**
+     * @param fileName
+     * @return the ImportCheckpoint entity
+     */
+    @Select
+    ImportCheckpoint selectById(String fileName);
+
+    /**
+     * @param entity
+     * @return affected rows
+     */
+    @Insert
+    int insert(ImportCheckpoint entity);
+
+    /**
+     * @param entity
+     * @return affected rows
+     */
+    @Update
+    int update(ImportCheckpoint entity);
+
+    /**
+     * @param entity
+     * @return affected rows
+     */
+    @Delete
+    int delete(ImportCheckpoint entity);
+}
@@ -1,13 +1,17 @@
 package ksbysample.eipapp.dirchecker.dao;
 
 import ksbysample.eipapp.dirchecker.entity.LendingApp;
+import ksbysample.eipapp.dirchecker.util.doma.BatchUpdateResult;
 import ksbysample.eipapp.dirchecker.util.doma.ComponentAndAutowiredDomaConfig;
+import org.seasar.doma.BatchUpdate;
 import org.seasar.doma.Dao;
 import org.seasar.doma.Delete;
 import org.seasar.doma.Insert;
 import org.seasar.doma.Select;
 import org.seasar.doma.Update;
 
+import java.util.List;
+
 /**
  */
 @Dao
@@ -43,6 +47,23 @@ public interface LendingAppDao {
     @Update
     int update(LendingApp entity);
 
+    /**
+     * version が一致しない行があっても BatchOptimisticLockException を throw せず、その行の更新件数を 0 で返す
+     *
+     * @param entities
+     * @return affected rows
+     */
+    @BatchUpdate(suppressOptimisticLockException = true)
+    int[] updateBatch(List<LendingApp> entities);
+
+    /**
+     * @param entities
+     * @return updated and conflicting entities
+     */
+    default BatchUpdateResult<LendingApp> updateBatchWithResult(List<LendingApp> entities) {
+        return BatchUpdateResult.of(entities, updateBatch(entities));
+    }
+
     /**
      * @param entity
      * @return affected rows
@@ -1,13 +1,20 @@
 package ksbysample.eipapp.dirchecker.dao;
 
 import ksbysample.eipapp.dirchecker.entity.LendingBook;
+import ksbysample.eipapp.dirchecker.util.doma.BatchUpdateResult;
 import ksbysample.eipapp.dirchecker.util.doma.ComponentAndAutowiredDomaConfig;
+import org.seasar.doma.BatchUpdate;
 import org.seasar.doma.Dao;
 import org.seasar.doma.Delete;
 import org.seasar.doma.Insert;
 import org.seasar.doma.Select;
+import org.seasar.doma.SelectType;
 import org.seasar.doma.Update;
 
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
 /**
  */
 @Dao
@@ -29,6 +36,32 @@ public interface LendingBookDao {
     @Select(ensureResult = true)
     LendingBook selectByIdAndVersion(Long lendingBookId, Long version);
 
+    /**
+     * PostgreSQL ではトランザクション内で呼び出さないと fetchSize 件毎に取得されず全件メモリに読み込まれる
+     *
+     * @param mapper
+     * @return the result of mapper
+     */
+    @Select(strategy = SelectType.STREAM, fetchSize = 1000)
+    <R> R selectAll(Function<Stream<LendingBook>, R> mapper);
+
+    /**
+     * lending_book_id の昇順で、lastLendingBookId より後の行を limit 件取得する ( 最初は lastLendingBookId に null を渡す )
+     *
+     * @param lastLendingBookId
+     * @param limit
+     * @return the LendingBook entities
+     */
+    @Select
+    List<LendingBook> selectAfterId(Long lastLendingBookId, int limit);
+
+    /**
+     * @param lendingBookIds
+     * @return the LendingBook entities
+     */
+    @Select
+    List<LendingBook> selectByIds(List<Long> lendingBookIds);
+
     /**
      * @param entity
      * @return affected rows
@@ -43,6 +76,23 @@ public interface LendingBookDao {
     @Update
     int update(LendingBook entity);
 
+    /**
+     * version が一致しない行があっても BatchOptimisticLockException を throw せず、その行の更新件数を 0 で返す
+     *
+     * @param entities
+     * @return affected rows
+     */
+    @BatchUpdate(suppressOptimisticLockException = true)
+    int[] updateBatch(List<LendingBook> entities);
+
+    /**
+     * @param entities
+     * @return updated and conflicting entities
+     */
+    default BatchUpdateResult<LendingBook> updateBatchWithResult(List<LendingBook> entities) {
+        return BatchUpdateResult.of(entities, updateBatch(entities));
+    }
+
     /**
      * @param entity
      * @return affected rows
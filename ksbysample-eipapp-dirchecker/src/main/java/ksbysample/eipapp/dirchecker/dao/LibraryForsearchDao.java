@@ -6,8 +6,13 @@ import org.seasar.doma.Dao;
 import org.seasar.doma.Delete;
 import org.seasar.doma.Insert;
 import org.seasar.doma.Select;
+import org.seasar.doma.SelectType;
 import org.seasar.doma.Update;
 
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
 /**
  */
 @Dao
@@ -21,6 +26,32 @@ public interface LibraryForsearchDao {
     @Select
     LibraryForsearch selectById(String systemid);
 
+    /**
+     * PostgreSQL ではトランザクション内で呼び出さないと fetchSize 件毎に取得されず全件メモリに読み込まれる
+     *
+     * @param mapper
+     * @return the result of mapper
+     */
+    @Select(strategy = SelectType.STREAM, fetchSize = 1000)
+    <R> R selectAll(Function<Stream<LibraryForsearch>, R> mapper);
+
+    /**
+     * systemid の昇順で、lastSystemid より後の行を limit 件取得する ( 最初は lastSystemid に null を渡す )
+     *
+     * @param lastSystemid
+     * @param limit
+     * @return the LibraryForsearch entities
+     */
+    @Select
+    List<LibraryForsearch> selectAfterId(String lastSystemid, int limit);
+
+    /**
+     * @param systemids
+     * @return the LibraryForsearch entities
+     */
+    @Select
+    List<LibraryForsearch> selectByIds(List<String> systemids);
+
     /**
      * @param entity
      * @return affected rows
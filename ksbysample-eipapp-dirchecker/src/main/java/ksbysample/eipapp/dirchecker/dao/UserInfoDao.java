@@ -2,12 +2,18 @@ package ksbysample.eipapp.dirchecker.dao;
 
 import ksbysample.eipapp.dirchecker.entity.UserInfo;
 import ksbysample.eipapp.dirchecker.util.doma.ComponentAndAutowiredDomaConfig;
+import org.seasar.doma.BatchInsert;
 import org.seasar.doma.Dao;
 import org.seasar.doma.Delete;
 import org.seasar.doma.Insert;
 import org.seasar.doma.Select;
+import org.seasar.doma.SelectType;
 import org.seasar.doma.Update;
 
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
 /**
  */
 @Dao
@@ -21,6 +27,27 @@ public interface UserInfoDao {
     @Select
     UserInfo selectById(Long userId);
 
+    /**
+     * @param mapper
+     * @return the result of mapper
+     */
+    @Select(strategy = SelectType.STREAM, fetchSize = 10000)
+    <R> R selectAllUsernames(Function<Stream<String>, R> mapper);
+
+    /**
+     * @param username
+     * @return the number of rows with the username
+     */
+    @Select
+    int selectCountByUsername(String username);
+
+    /**
+     * @param count
+     * @return user_id sequence values
+     */
+    @Select
+    List<Long> selectNextUserIds(int count);
+
     /**
      * @param entity
      * @return affected rows
@@ -35,6 +62,15 @@ public interface UserInfoDao {
     @Update
     int update(UserInfo entity);
 
+    /**
+     * user_id は selectNextUserIds で採番した値をセットしておくこと
+     *
+     * @param entities
+     * @return affected rows
+     */
+    @BatchInsert(sqlFile = true)
+    int[] insertBatch(List<UserInfo> entities);
+
     /**
      * @param entity
      * @return affected rows
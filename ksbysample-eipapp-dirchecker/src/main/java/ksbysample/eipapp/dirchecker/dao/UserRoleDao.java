@@ -2,12 +2,15 @@ package ksbysample.eipapp.dirchecker.dao;
 
 import ksbysample.eipapp.dirchecker.entity.UserRole;
 import ksbysample.eipapp.dirchecker.util.doma.ComponentAndAutowiredDomaConfig;
+import org.seasar.doma.BatchInsert;
 import org.seasar.doma.Dao;
 import org.seasar.doma.Delete;
 import org.seasar.doma.Insert;
 import org.seasar.doma.Select;
 import org.seasar.doma.Update;
 
+import java.util.List;
+
 /**
  */
 @Dao
@@ -35,6 +38,13 @@ public interface UserRoleDao {
     @Update
     int update(UserRole entity);
 
+    /**
+     * @param entities
+     * @return affected rows
+     */
+    @BatchInsert(sqlFile = true)
+    int[] insertBatch(List<UserRole> entities);
+
     /**
      * @param entity
      * @return affected rows
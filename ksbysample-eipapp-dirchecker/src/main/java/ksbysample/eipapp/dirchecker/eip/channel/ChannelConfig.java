@@ -18,4 +18,9 @@ public class ChannelConfig {
         return new DirectChannel();
     }
 
+    @Bean
+    public MessageChannel csvToDbChannel() {
+        return new DirectChannel();
+    }
+
 }
@@ -22,6 +22,8 @@ public class DomaConfig implements Config {
 
     private SqlFileRepository sqlFileRepository;
 
+    private int batchSize;
+
     public DomaConfig() {
     }
 
@@ -47,6 +49,11 @@ public class DomaConfig implements Config {
         }
     }
 
+    @Autowired
+    public void setBatchSize(@Value("${doma.batch-size:500}") int batchSize) {
+        this.batchSize = batchSize;
+    }
+
     @Override
     public DataSource getDataSource() {
         return this.dataSource;
@@ -62,4 +69,9 @@ public class DomaConfig implements Config {
         return this.sqlFileRepository;
     }
 
+    @Override
+    public int getBatchSize() {
+        return this.batchSize;
+    }
+
 }
@@ -0,0 +1,93 @@
+package ksbysample.eipapp.dirchecker.eip.config;
+
+import org.apache.commons.lang3.StringUtils;
+import org.seasar.doma.jdbc.dialect.Dialect;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 起動時に Dao の SQL ファイルを全て読み込んで解析し、DomaConfig の SqlFileRepository にキャッシュしておく。
+ * デプロイ後に最初に処理されるファイルで SQL ファイルの解析に時間がかからないようにするのと、
+ * SQL ファイルの記述誤りを最初のメッセージの処理時ではなく起動時にエラーにするために行う。
+ */
+@Component
+public class DomaSqlFileWarmUp {
+
+    private static final String SQL_FILE_LOCATION_PATTERN = "classpath*:META-INF/**/dao/**/*.sql";
+
+    private static final String SQL_PATH_PREFIX = "META-INF/";
+
+    private static final String SQL_PATH_SUFFIX = ".sql";
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    @Autowired
+    private DomaConfig domaConfig;
+
+    @PostConstruct
+    public void warmUp() throws IOException {
+        Resource[] resources = new PathMatchingResourcePatternResolver().getResources(SQL_FILE_LOCATION_PATTERN);
+        Dialect dialect = domaConfig.getDialect();
+        long totalNanos = 0;
+        int count = 0;
+        for (Resource resource : resources) {
+            String url = resource.getURL().toString();
+            String path = url.substring(url.lastIndexOf(SQL_PATH_PREFIX));
+            // selectById-postgres.sql のような RDBMS 毎の SQL ファイルは、元の SQL ファイルのパスで読み込まれる
+            String fileName = StringUtils.substringAfterLast(path, "/");
+            if (fileName.contains("-")) {
+                if (!StringUtils.endsWith(fileName, "-" + dialect.getName() + SQL_PATH_SUFFIX)) {
+                    continue;
+                }
+                path = StringUtils.substringBeforeLast(path, "-") + SQL_PATH_SUFFIX;
+            }
+
+            Method method = findDaoMethod(path);
+            if (method == null) {
+                logger.warn("SQL ファイル {} に対応する Dao のメソッドがありません。", path);
+                continue;
+            }
+
+            long start = System.nanoTime();
+            try {
+                domaConfig.getSqlFileRepository().getSqlFile(method, path, dialect);
+            } catch (RuntimeException e) {
+                throw new IllegalStateException(String.format("SQL ファイル %s の解析に失敗しました。", path), e);
+            }
+            long nanos = System.nanoTime() - start;
+            logger.debug("SQL ファイル {} を解析しました ( {} ms )。", path, TimeUnit.NANOSECONDS.toMillis(nanos));
+            totalNanos += nanos;
+            count++;
+        }
+        logger.info("SQL ファイルを {} 件解析しました ( {} ms )。", count, TimeUnit.NANOSECONDS.toMillis(totalNanos));
+    }
+
+    /**
+     * META-INF/ksbysample/eipapp/dirchecker/dao/UserInfoDao/selectById.sql であれば
+     * ksbysample.eipapp.dirchecker.dao.UserInfoDao#selectById を返す。
+     */
+    private Method findDaoMethod(String path) {
+        String daoClassName = StringUtils.substringBeforeLast(StringUtils.removeStart(path, SQL_PATH_PREFIX), "/")
+                .replace('/', '.');
+        String methodName = StringUtils.removeEnd(StringUtils.substringAfterLast(path, "/"), SQL_PATH_SUFFIX);
+        if (!ClassUtils.isPresent(daoClassName, null)) {
+            return null;
+        }
+        return Arrays.stream(ClassUtils.resolveClassName(daoClassName, null).getMethods())
+                .filter(method -> method.getName().equals(methodName))
+                .findFirst()
+                .orElse(null);
+    }
+
+}
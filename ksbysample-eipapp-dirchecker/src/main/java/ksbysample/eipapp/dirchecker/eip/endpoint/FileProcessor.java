@@ -1,8 +1,9 @@
 package ksbysample.eipapp.dirchecker.eip.endpoint;
 
 import ksbysample.eipapp.dirchecker.service.userinfo.UserInfoService;
-import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.integration.annotation.MessageEndpoint;
 import org.springframework.integration.annotation.ServiceActivator;
 import org.springframework.messaging.Message;
@@ -17,11 +18,29 @@ public class FileProcessor {
     @Autowired
     private UserInfoService userInfoService;
 
+    // 1 以上の場合には、指定された行数毎にコミットし、エラー後の再処理時は途中から登録を再開する
+    @Value("${userinfo.import.commit-size:0}")
+    private int commitSize;
+
     @ServiceActivator(inputChannel = "excelToDbChannel")
     public void process(Message<File> message)
-            throws InvalidFormatException, SAXException, IOException {
+            throws OpenXML4JException, SAXException, IOException {
+        File file = message.getPayload();
+        if (commitSize > 0) {
+            userInfoService.loadUserInfoFromExcelInChunks(file, commitSize);
+        } else {
+            userInfoService.loadUserInfoFromExcel(file);
+        }
+    }
+
+    @ServiceActivator(inputChannel = "csvToDbChannel")
+    public void processCsv(Message<File> message) throws IOException {
         File file = message.getPayload();
-        userInfoService.loadUserInfoFromExcel(file);
+        if (commitSize > 0) {
+            userInfoService.loadUserInfoFromCsvInChunks(file, commitSize);
+        } else {
+            userInfoService.loadUserInfoFromCsv(file);
+        }
     }
 
 }
@@ -1,17 +1,19 @@
 package ksbysample.eipapp.dirchecker.eip.endpoint;
 
+import ksbysample.eipapp.dirchecker.eip.file.WatchServiceDirectoryScanner;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Bean;
 import org.springframework.expression.ExpressionParser;
 import org.springframework.expression.spel.standard.SpelExpressionParser;
-import org.springframework.integration.annotation.Filter;
 import org.springframework.integration.annotation.InboundChannelAdapter;
 import org.springframework.integration.annotation.MessageEndpoint;
 import org.springframework.integration.annotation.Poller;
+import org.springframework.integration.annotation.Router;
 import org.springframework.integration.channel.NullChannel;
 import org.springframework.integration.file.FileReadingMessageSource;
 import org.springframework.integration.scheduling.PollerMetadata;
@@ -20,6 +22,7 @@ import org.springframework.integration.transaction.ExpressionEvaluatingTransacti
 import org.springframework.integration.transaction.PseudoTransactionManager;
 import org.springframework.integration.transaction.TransactionSynchronizationFactory;
 import org.springframework.messaging.Message;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.scheduling.support.PeriodicTrigger;
 import org.springframework.transaction.interceptor.DefaultTransactionAttribute;
 import org.springframework.transaction.interceptor.MatchAlwaysTransactionAttributeSource;
@@ -28,6 +31,7 @@ import org.springframework.transaction.interceptor.TransactionInterceptor;
 import java.io.File;
 import java.nio.file.Paths;
 import java.util.Collections;
+import java.util.concurrent.ThreadPoolExecutor;
 
 @MessageEndpoint
 public class InDirChecker {
@@ -50,6 +54,27 @@ public class InDirChecker {
     @Autowired
     private FileReadingMessageSource inDirFileReadingMessageSource;
 
+    @Value("${dirchecker.poller.interval:1000}")
+    private long pollerInterval;
+
+    // 2 以上の場合には、複数のファイルを別々のスレッドで並行して処理する
+    @Value("${dirchecker.poller.concurrency:1}")
+    private int pollerConcurrency;
+
+    // 1回のポーリングで1スレッドが続けて処理するファイルの最大数
+    @Value("${dirchecker.poller.max-files-per-poll:1}")
+    private long maxFilesPerPoll;
+
+    // true の場合には、ディレクトリ全体をスキャンせずに WatchService のイベントで新しいファイルを検知する。
+    // ファイルを置いてから処理が開始されるまでの時間は最大で quiet-period + dirchecker.poller.interval になるので、
+    // dirchecker.poller.interval も短く ( 50ms 等 ) すること
+    @Value("${dirchecker.watch-service.enabled:false}")
+    private boolean watchServiceEnabled;
+
+    // WatchService で検知したファイルは、サイズ・更新日時がこの時間 ( ミリ秒 ) 変わらなくなってから処理する
+    @Value("${dirchecker.watch-service.quiet-period:200}")
+    private long watchServiceQuietPeriod;
+
     @Bean
     public TransactionSynchronizationFactory checkFilePollerSyncFactory() {
         ExpressionParser parser = new SpelExpressionParser();
@@ -64,20 +89,49 @@ public class InDirChecker {
         return new DefaultTransactionSynchronizationFactory(syncProcessor);
     }
 
+    @Bean
+    public WatchServiceDirectoryScanner inDirWatchServiceDirectoryScanner() {
+        return new WatchServiceDirectoryScanner(Paths.get(IN_DIR_PATH).toFile(), watchServiceQuietPeriod);
+    }
+
     @Bean
     public FileReadingMessageSource inDirFileReadingMessageSource() {
         FileReadingMessageSource source = new FileReadingMessageSource();
         source.setDirectory(Paths.get(IN_DIR_PATH).toFile());
+        if (watchServiceEnabled) {
+            // イベントを取得するだけでスキャンのコストはほぼかからないので、dirchecker.poller.interval を
+            // 短く ( 50ms 等 ) してファイルを置いてから処理が開始されるまでの時間を短くする。
+            // コピー中のファイルは書き込みが終わるまで ( quiet-period の間変更されなくなるまで ) 返さない
+            source.setScanner(inDirWatchServiceDirectoryScanner());
+        }
         return source;
     }
 
+    @Bean
+    public ThreadPoolTaskExecutor checkFilePollerTaskExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(pollerConcurrency);
+        executor.setMaxPoolSize(pollerConcurrency);
+        executor.setQueueCapacity(0);
+        executor.setThreadNamePrefix("checkFilePoller-");
+        // 全スレッドが処理中の時はそのポーリングをスキップする
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.DiscardPolicy());
+        return executor;
+    }
+
     @Bean
     public PollerMetadata checkFilePoller() {
-        PeriodicTrigger trigger = new PeriodicTrigger(1000);
+        PeriodicTrigger trigger = new PeriodicTrigger(pollerInterval);
         trigger.setFixedRate(true);
         PollerMetadata poller = new PollerMetadata();
         poller.setTrigger(trigger);
+        poller.setMaxMessagesPerPoll(maxFilesPerPoll);
         poller.setTransactionSynchronizationFactory(checkFilePollerSyncFactory());
+        if (pollerConcurrency > 1) {
+            // ポーリングを checkFilePollerTaskExecutor のスレッドで実行する。advice chain ( トランザクション ) は
+            // ファイル1つ毎に適用されるので、処理後の削除・エラーディレクトリへの移動もファイル毎に行われる
+            poller.setTaskExecutor(checkFilePollerTaskExecutor());
+        }
 
         MatchAlwaysTransactionAttributeSource matchAlwaysTransactionAttributeSource = new MatchAlwaysTransactionAttributeSource();
         matchAlwaysTransactionAttributeSource.setTransactionAttribute(new DefaultTransactionAttribute());
@@ -93,14 +147,19 @@ public class InDirChecker {
         return inDirFileReadingMessageSource.receive();
     }
 
-    @Filter(inputChannel = "inChannel", outputChannel = "excelToDbChannel")
-    public boolean filter(Message<File> message) {
+    @Router(inputChannel = "inChannel")
+    public String route(Message<File> message) {
         File file = message.getPayload();
-        if (!StringUtils.endsWith(file.getName(), ".xlsx")) {
-            throw new RuntimeException(
-                    String.format("拡張子が .xlsx のファイルではありません ( %s )。", file.getName()));
+        // Windows では拡張子が大文字のファイルも置かれるので、大文字・小文字を区別せずに判定する
+        if (StringUtils.endsWithIgnoreCase(file.getName(), ".xlsx")) {
+            return "excelToDbChannel";
+        }
+        if (StringUtils.endsWithIgnoreCase(file.getName(), ".csv")
+                || StringUtils.endsWithIgnoreCase(file.getName(), ".tsv")) {
+            return "csvToDbChannel";
         }
-        return true;
+        throw new RuntimeException(
+                String.format("拡張子が .xlsx, .csv, .tsv のファイルではありません ( %s )。", file.getName()));
     }
 
 }
@@ -0,0 +1,163 @@
+package ksbysample.eipapp.dirchecker.eip.file;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.integration.file.DefaultDirectoryScanner;
+import org.springframework.integration.file.filters.AcceptOnceFileListFilter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * NIO の WatchService で監視対象ディレクトリのファイル作成・更新イベントを受け取り、作成されたファイルだけを返す
+ * DirectoryScanner。ポーリングの度にディレクトリ全体をスキャンしないので、ファイル数が多くてもスキャンの
+ * コストは増えない。
+ * ENTRY_CREATE はファイルのコピー開始時に通知されるので、検知したファイルはサイズ・更新日時が quietPeriod ミリ秒
+ * 変わらなくなってから ( 書き込みが終わってから ) 返す。
+ * 最初のスキャン時と、イベントが溢れた ( OVERFLOW ) 時だけディレクトリ全体をスキャンする。
+ * WatchService は最初にスキャンされた時に生成するので、scanner として使用されなければ何もしない。
+ */
+public class WatchServiceDirectoryScanner extends DefaultDirectoryScanner implements DisposableBean {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final Path directory;
+
+    private final long quietPeriodNanos;
+
+    // 書き込みが終わるのを待っているファイル
+    private final Map<File, FileState> pendingFileMap = new LinkedHashMap<>();
+
+    private WatchService watchService;
+
+    private boolean closed = false;
+
+    /**
+     * @param directory         監視対象ディレクトリ
+     * @param quietPeriodMillis サイズ・更新日時がこの時間 ( ミリ秒 ) 変わらなければ書き込みが終わったとみなす
+     */
+    public WatchServiceDirectoryScanner(File directory, long quietPeriodMillis) {
+        this.directory = directory.toPath();
+        this.quietPeriodNanos = TimeUnit.MILLISECONDS.toNanos(quietPeriodMillis);
+        // FileReadingMessageSource のデフォルトと同様、1度取得したファイルは再度取得しない
+        setFilter(new AcceptOnceFileListFilter<>());
+    }
+
+    @Override
+    protected synchronized File[] listEligibleFiles(File directory) {
+        if (closed) {
+            return new File[0];
+        }
+
+        if (watchService == null) {
+            try {
+                watchService = FileSystems.getDefault().newWatchService();
+                this.directory.register(watchService
+                        , StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            // 監視開始前に置かれていたファイルを取得するため、最初は全体をスキャンする
+            addPendingFiles(super.listEligibleFiles(directory));
+            return collectWrittenFiles();
+        }
+
+        WatchKey key;
+        try {
+            while ((key = watchService.poll()) != null) {
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        // 取りこぼしたイベントがあるのでディレクトリ全体をスキャンし直す
+                        logger.warn("WatchService のイベントが溢れたため {} を再スキャンします。", this.directory);
+                        addPendingFiles(super.listEligibleFiles(directory));
+                        continue;
+                    }
+                    // 他のディレクトリから移動されたファイルも ENTRY_CREATE で通知される
+                    File file = this.directory.resolve((Path) event.context()).toFile();
+                    if (file.isFile()) {
+                        addPendingFiles(file);
+                    }
+                }
+                key.reset();
+            }
+        } catch (ClosedWatchServiceException e) {
+            return new File[0];
+        }
+        return collectWrittenFiles();
+    }
+
+    private void addPendingFiles(File... files) {
+        Arrays.stream(files)
+                .filter(File::isFile)
+                .forEach(file -> pendingFileMap.putIfAbsent(file, new FileState(file)));
+    }
+
+    /**
+     * 書き込みを待っているファイルのうち、quietPeriod の間サイズ・更新日時が変わっていないものを返す。
+     */
+    private File[] collectWrittenFiles() {
+        List<File> fileList = new ArrayList<>();
+        long now = System.nanoTime();
+        for (Iterator<Map.Entry<File, FileState>> it = pendingFileMap.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<File, FileState> entry = it.next();
+            File file = entry.getKey();
+            if (!file.exists()) {
+                it.remove();
+                continue;
+            }
+
+            FileState current = new FileState(file);
+            if (!current.isSameAs(entry.getValue())) {
+                entry.setValue(current);
+            } else if (now - entry.getValue().observedNanos >= quietPeriodNanos) {
+                fileList.add(file);
+                it.remove();
+            }
+        }
+        return fileList.toArray(new File[fileList.size()]);
+    }
+
+    @Override
+    public synchronized void destroy() throws IOException {
+        closed = true;
+        if (watchService != null) {
+            watchService.close();
+        }
+    }
+
+    private static class FileState {
+
+        private final long length;
+
+        private final long lastModified;
+
+        private final long observedNanos;
+
+        private FileState(File file) {
+            this.length = file.length();
+            this.lastModified = file.lastModified();
+            this.observedNanos = System.nanoTime();
+        }
+
+        private boolean isSameAs(FileState other) {
+            return this.length == other.length && this.lastModified == other.lastModified;
+        }
+
+    }
+
+}
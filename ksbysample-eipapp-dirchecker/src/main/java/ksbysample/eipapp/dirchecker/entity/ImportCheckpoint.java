@@ -0,0 +1,132 @@
+package ksbysample.eipapp.dirchecker.entity;
+
+import java.time.LocalDateTime;
+import org.seasar.doma.Column;
+import org.seasar.doma.Entity;
+import org.seasar.doma.Id;
+import org.seasar.doma.Table;
+
+/**
+ * create table import_checkpoint (
+ *   file_name       varchar(255) not null primary key,
+ *   file_size       bigint       not null,
+ *   last_modified   bigint       not null,
+ *   committed_rows  integer      not null,
+ *   update_time     timestamp    not null
+ * );
+ */
+@Entity
+@Table(name = "import_checkpoint")
+public class ImportCheckpoint {
+
+    /** */
+    @Id
+    @Column(name = "file_name")
+    String fileName;
+
+    /** */
+    @Column(name = "file_size")
+    Long fileSize;
+
+    /** */
+    @Column(name = "last_modified")
+    Long lastModified;
+
+    /** */
+    @Column(name = "committed_rows")
+    Integer committedRows;
+
+    /** */
+    @Column(name = "update_time")
+    LocalDateTime updateTime;
+
+    /** 
+     * Returns the fileName.
+     * 
+     * @return the fileName
+     */
+    public String getFileName() {
+        return fileName;
+    }
+
+    /** 
+     * Sets the fileName.
+     * 
+     * @param fileName the fileName
+     */
+    public void setFileName(String fileName) {
+        this.fileName = fileName;
+    }
+
+    /** 
+     * Returns the fileSize.
+     * 
+     * @return the fileSize
+     */
+    public Long getFileSize() {
+        return fileSize;
+    }
+
+    /** 
+     * Sets the fileSize.
+     * 
+     * @param fileSize the fileSize
+     */
+    public void setFileSize(Long fileSize) {
+        this.fileSize = fileSize;
+    }
+
+    /** 
+     * Returns the lastModified.
+     * 
+     * @return the lastModified
+     */
+    public Long getLastModified() {
+        return lastModified;
+    }
+
+    /** 
+     * Sets the lastModified.
+     * 
+     * @param lastModified the lastModified
+     */
+    public void setLastModified(Long lastModified) {
+        this.lastModified = lastModified;
+    }
+
+    /** 
+     * Returns the committedRows.
+     * 
+     * @return the committedRows
+     */
+    public Integer getCommittedRows() {
+        return committedRows;
+    }
+
+    /** 
+     * Sets the committedRows.
+     * 
+     * @param committedRows the committedRows
+     */
+    public void setCommittedRows(Integer committedRows) {
+        this.committedRows = committedRows;
+    }
+
+    /** 
+     * Returns the updateTime.
+     * 
+     * @return the updateTime
+     */
+    public LocalDateTime getUpdateTime() {
+        return updateTime;
+    }
+
+    /** 
+     * Sets the updateTime.
+     * 
+     * @param updateTime the updateTime
+     */
+    public void setUpdateTime(LocalDateTime updateTime) {
+        this.updateTime = updateTime;
+    }
+}
@@ -0,0 +1,103 @@
+package ksbysample.eipapp.dirchecker.service.userinfo;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Excel 等から取り込んだユーザのパスワードを BCrypt でハッシュ化する。
+ * BCrypt は意図的に遅いアルゴリズムなので、CPU コア数分のスレッドで並列に処理する。
+ */
+@Component
+@ManagedResource(objectName = "ksbysample.eipapp.dirchecker:name=UserInfoPasswordEncoder")
+public class UserInfoPasswordEncoder {
+
+    @Value("${userinfo.import.bcrypt-strength:10}")
+    private int bcryptStrength;
+
+    // 0 以下の場合には CPU コア数にする
+    @Value("${userinfo.import.hash-threads:0}")
+    private int hashThreads;
+
+    private PasswordEncoder passwordEncoder;
+
+    private ExecutorService executor;
+
+    private final AtomicLong hashedCount = new AtomicLong();
+
+    private final AtomicLong hashingNanos = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        // BCryptPasswordEncoder はスレッドセーフなので1インスタンスを全スレッドで共有する
+        this.passwordEncoder = new BCryptPasswordEncoder(bcryptStrength);
+        int threads = hashThreads > 0 ? hashThreads : Runtime.getRuntime().availableProcessors();
+        this.executor = Executors.newFixedThreadPool(threads, new CustomizableThreadFactory("bcrypt-"));
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * @param rawPasswordList ハッシュ化するパスワードのリスト
+     * @return ハッシュ化したパスワードのリスト ( rawPasswordList と同じ順序 )
+     */
+    public List<String> encode(List<String> rawPasswordList) {
+        long start = System.nanoTime();
+        List<Callable<String>> taskList = rawPasswordList.stream()
+                .map(rawPassword -> (Callable<String>) () -> passwordEncoder.encode(rawPassword))
+                .collect(Collectors.toList());
+
+        List<String> encodedPasswordList = new ArrayList<>(rawPasswordList.size());
+        try {
+            // invokeAll は taskList と同じ順序で Future を返す
+            for (Future<String> future : executor.invokeAll(taskList)) {
+                encodedPasswordList.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+
+        hashedCount.addAndGet(encodedPasswordList.size());
+        hashingNanos.addAndGet(System.nanoTime() - start);
+        return encodedPasswordList;
+    }
+
+    @ManagedAttribute(description = "ハッシュ化したパスワードの件数")
+    public long getHashedCount() {
+        return hashedCount.get();
+    }
+
+    @ManagedAttribute(description = "1秒あたりにハッシュ化した件数")
+    public double getHashedRowsPerSecond() {
+        long nanos = hashingNanos.get();
+        return nanos == 0 ? 0 : hashedCount.get() * TimeUnit.SECONDS.toNanos(1) / (double) nanos;
+    }
+
+}
@@ -0,0 +1,118 @@
+package ksbysample.eipapp.dirchecker.service.userinfo;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 登録しなかったデータを &lt;取り込んだファイル名&gt;.rejects.csv に出力する。
+ * 出力するデータがなければファイルは作成しない。取り込みを途中から再開した場合以外は前回出力したファイルを上書きする。
+ */
+public class UserInfoRejectReport implements Closeable {
+
+    private static final String REJECTS_FILE_SUFFIX = ".rejects.csv";
+
+    // 各行の先頭の行番号
+    private static final Pattern ROW_NUM_PATTERN = Pattern.compile("^(\\d+),");
+
+    private final File reportFile;
+
+    private final boolean append;
+
+    private BufferedWriter writer;
+
+    private int count = 0;
+
+    /**
+     * @param rejectDir      出力先ディレクトリ
+     * @param importFile     取り込んだファイル
+     * @param resumeAfterRow チャンク毎にコミットする取り込みを途中から再開した場合には、コミット済の行番号。
+     *                       前回出力したファイルからこの行より後のデータを削除して、続きを追記する
+     */
+    public UserInfoRejectReport(File rejectDir, File importFile, int resumeAfterRow) {
+        this.reportFile = new File(rejectDir, importFile.getName() + REJECTS_FILE_SUFFIX);
+        this.append = resumeAfterRow > 0;
+        if (this.append && reportFile.exists()) {
+            truncateAfter(resumeAfterRow);
+        }
+    }
+
+    /**
+     * 前回コミットされなかったチャンクのデータは再開後に再度出力されるので、先に削除しておく。
+     */
+    private void truncateAfter(int resumeAfterRow) {
+        try {
+            List<String> lineList = new ArrayList<>();
+            boolean keep = true;
+            for (String line : Files.readAllLines(reportFile.toPath(), StandardCharsets.UTF_8)) {
+                // 値に改行が含まれている場合の2行目以降は、直前の行番号に従う
+                Matcher matcher = ROW_NUM_PATTERN.matcher(line);
+                if (matcher.find()) {
+                    keep = Integer.parseInt(matcher.group(1)) <= resumeAfterRow;
+                }
+                if (keep) {
+                    lineList.add(line);
+                }
+            }
+            Files.write(reportFile.toPath(), lineList, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @param rowNum           取り込んだファイル内のデータの行番号 ( ヘッダ行を除き 1 から )
+     * @param userInfoExcelRow 登録しなかったデータ
+     * @param reason           登録しなかった理由
+     */
+    public void write(int rowNum, UserInfoExcelRow userInfoExcelRow, String reason) {
+        try {
+            if (writer == null) {
+                Files.createDirectories(reportFile.getParentFile().toPath());
+                writer = Files.newBufferedWriter(reportFile.toPath(), StandardCharsets.UTF_8
+                        , StandardOpenOption.CREATE, StandardOpenOption.WRITE
+                        , append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING);
+            }
+            writer.write(String.join(","
+                    , String.valueOf(rowNum)
+                    , quote(userInfoExcelRow.getUsername())
+                    , quote(userInfoExcelRow.getMailAddress())
+                    , quote(reason)));
+            writer.newLine();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        count++;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public File getReportFile() {
+        return reportFile;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (writer != null) {
+            writer.close();
+        }
+    }
+
+    private String quote(String value) {
+        return "\"" + StringUtils.replace(StringUtils.defaultString(value), "\"", "\"\"") + "\"";
+    }
+
+}
@@ -1,37 +1,53 @@
 package ksbysample.eipapp.dirchecker.service.userinfo;
 
+import ksbysample.eipapp.dirchecker.dao.ImportCheckpointDao;
 import ksbysample.eipapp.dirchecker.dao.UserInfoDao;
 import ksbysample.eipapp.dirchecker.dao.UserRoleDao;
+import ksbysample.eipapp.dirchecker.entity.ImportCheckpoint;
 import ksbysample.eipapp.dirchecker.entity.UserInfo;
 import ksbysample.eipapp.dirchecker.entity.UserRole;
+import ksbysample.eipapp.dirchecker.util.csv.DelimitedRowReader;
+import ksbysample.eipapp.dirchecker.util.excel.ExcelRowMappingRegistry;
+import ksbysample.eipapp.dirchecker.util.excel.ExcelRowStreamReader;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
-import org.jxls.reader.ReaderBuilder;
-import org.jxls.reader.XLSReadStatus;
-import org.jxls.reader.XLSReader;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.core.io.ClassPathResource;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.Resource;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.xml.sax.SAXException;
 
 import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.Charset;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 @Service
 public class UserInfoService {
 
-    private static final String CLASSPATH_USERINFO_EXCEL_CFG_XML
-            = "ksbysample/eipapp/dirchecker/service/userinfo/userinfo-excel-cfg.xml";
+    // userinfo-excel-cfg.xml の定義
+    private static final String USERINFO_EXCEL_MAPPING = "userinfo";
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
     @Autowired
     private UserInfoDao userInfoDao;
@@ -39,46 +55,270 @@ public class UserInfoService {
     @Autowired
     private UserRoleDao userRoleDao;
 
+    @Autowired
+    private UserInfoPasswordEncoder userInfoPasswordEncoder;
+
+    @Autowired
+    private ExcelRowMappingRegistry excelRowMappingRegistry;
+
+    @Autowired
+    private ImportCheckpointDao importCheckpointDao;
+
+    // pseudoTransactionManager ではなく DB の transactionManager を使用する
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${userinfo.import.batch-size:500}")
+    private int batchSize;
+
+    @Value("${userinfo.import.csv-charset:UTF-8}")
+    private String csvCharset;
+
+    // true の場合には、username が登録済・ファイル内で重複しているデータを登録せずに reject-dir に出力する。
+    // 取り込む度に user_info の全件の username を読み込むので、デフォルトは false にする
+    @Value("${userinfo.import.dedup.enabled:false}")
+    private boolean dedupEnabled;
+
+    @Value("${userinfo.import.reject-dir:C:\\eipapp\\ksbysample-eipapp-dirchecker\\data\\reject}")
+    private File rejectDir;
+
     public void loadUserInfoFromExcel(File excelFile)
-            throws InvalidFormatException, SAXException, IOException {
-        // Excel ファイルからデータを読み込む
-        List<UserInfoExcelRow> userInfoExcelRowList = loadFromExcelToList(excelFile);
-
-        // user_info, user_role テーブルに登録する
-        userInfoExcelRowList.forEach(userInfoExcelRow -> {
-            UserInfo userInfo = makeUserInfo(userInfoExcelRow);
-            userInfoDao.insert(userInfo);
-
-            userInfoExcelRow.getRoleListFromRoles().forEach(role -> {
-                UserRole userRole = makeUserRole(userInfo.getUserId(), role);
-                userRoleDao.insert(userRole);
-            });
-        });
+            throws OpenXML4JException, SAXException, IOException {
+        this.<OpenXML4JException, SAXException>loadUserInfo(excelFile
+                , consumer -> loadFromExcel(excelFile, consumer));
+    }
+
+    public void loadUserInfoFromCsv(File csvFile) throws IOException {
+        loadUserInfo(csvFile, consumer -> loadFromCsv(csvFile, consumer));
+    }
+
+    /**
+     * commitSize 行毎にコミットしながら Excel ファイルのデータを登録する。コミット毎に登録済の行数を
+     * import_checkpoint テーブルに記録し、途中でエラーになったファイルを再処理する時は記録された行の
+     * 次の行から登録を再開する。
+     * applicationContext.xml の tx:advice で *InChunks メソッドはトランザクション外で呼び出される。
+     *
+     * @param excelFile  登録する .xlsx ファイル
+     * @param commitSize コミットする行数
+     */
+    public void loadUserInfoFromExcelInChunks(File excelFile, int commitSize)
+            throws OpenXML4JException, SAXException, IOException {
+        this.<OpenXML4JException, SAXException>loadUserInfoInChunks(excelFile, commitSize
+                , consumer -> loadFromExcel(excelFile, consumer));
+    }
+
+    /**
+     * {@link #loadUserInfoFromExcelInChunks(File, int)} の CSV/TSV 版。
+     */
+    public void loadUserInfoFromCsvInChunks(File csvFile, int commitSize) throws IOException {
+        loadUserInfoInChunks(csvFile, commitSize, consumer -> loadFromCsv(csvFile, consumer));
+    }
+
+    public int loadFromExcel(File excelFile, Consumer<UserInfoExcelRow> consumer)
+            throws OpenXML4JException, SAXException, IOException {
+        ExcelRowStreamReader<UserInfoExcelRow> reader = new ExcelRowStreamReader<>(
+                excelRowMappingRegistry.getMapping(USERINFO_EXCEL_MAPPING), UserInfoExcelRow.class);
+        return reader.read(excelFile, consumer);
+    }
+
+    /**
+     * 拡張子が .tsv のファイルはタブ区切り、それ以外はカンマ区切りのファイルとして読み込む。
+     * 列の定義は Excel と同じ userinfo-excel-cfg.xml を使用する。
+     */
+    public int loadFromCsv(File csvFile, Consumer<UserInfoExcelRow> consumer) throws IOException {
+        char delimiter = StringUtils.endsWithIgnoreCase(csvFile.getName(), ".tsv") ? '\t' : ',';
+        DelimitedRowReader<UserInfoExcelRow> reader = new DelimitedRowReader<>(
+                excelRowMappingRegistry.getMapping(USERINFO_EXCEL_MAPPING), UserInfoExcelRow.class
+                , delimiter, Charset.forName(csvCharset));
+        return reader.read(csvFile, consumer);
     }
 
     public List<UserInfoExcelRow> loadFromExcelToList(File excelFile)
-            throws IOException, SAXException, InvalidFormatException {
-        Resource rsExcelCfgXml = new ClassPathResource(CLASSPATH_USERINFO_EXCEL_CFG_XML);
+            throws IOException, InvalidFormatException {
         Resource rsUserInfoExcel = new FileSystemResource(excelFile.getAbsolutePath());
 
-        XLSReader reader = ReaderBuilder.buildFromXML(rsExcelCfgXml.getFile());
-
         List<UserInfoExcelRow> userInfoExcelRowList = new ArrayList<>();
         Map<String, Object> beans = new HashMap<>();
         beans.put("userInfoExcelRow", new UserInfoExcelRow());
         beans.put("userInfoExcelRowList", userInfoExcelRowList);
 
         try (InputStream isUserInfoExcel = new BufferedInputStream(rsUserInfoExcel.getInputStream())) {
-            XLSReadStatus status = reader.read(isUserInfoExcel, beans);
+            excelRowMappingRegistry.read(USERINFO_EXCEL_MAPPING, isUserInfoExcel, beans);
         }
 
         return userInfoExcelRowList;
     }
 
-    private UserInfo makeUserInfo(UserInfoExcelRow userInfoExcelRow) {
+    private <E1 extends Exception, E2 extends Exception> void loadUserInfo(File file
+            , UserInfoRowSource<E1, E2> rowSource) throws E1, E2, IOException {
+        UsernameIndex usernameIndex = loadUsernameIndex();
+        AtomicInteger rowCount = new AtomicInteger();
+        try (UserInfoRejectReport rejectReport = new UserInfoRejectReport(rejectDir, file, 0)) {
+            // ファイルから1行ずつデータを読み込み、batchSize 件毎に user_info, user_role テーブルに
+            // batch insert で登録する
+            List<UserInfoExcelRow> chunk = new ArrayList<>(batchSize);
+            rowSource.read(userInfoExcelRow -> {
+                if (!acceptRow(rowCount.incrementAndGet(), userInfoExcelRow, usernameIndex, rejectReport)) {
+                    return;
+                }
+                chunk.add(userInfoExcelRow);
+                if (chunk.size() >= batchSize) {
+                    insertChunk(chunk);
+                    chunk.clear();
+                }
+            });
+            if (!chunk.isEmpty()) {
+                insertChunk(chunk);
+            }
+            logRejects(rejectReport);
+        }
+    }
+
+    private <E1 extends Exception, E2 extends Exception> void loadUserInfoInChunks(File file, int commitSize
+            , UserInfoRowSource<E1, E2> rowSource) throws E1, E2, IOException {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        ImportCheckpoint checkpoint = findCheckpoint(file);
+        int skipRows = checkpoint.getCommittedRows();
+        if (skipRows > 0) {
+            logger.info("{} は {} 行目まで登録済みのため、続きから登録します。", file.getName(), skipRows);
+        }
+
+        UsernameIndex usernameIndex = loadUsernameIndex();
+        AtomicInteger rowCount = new AtomicInteger();
+        try (UserInfoRejectReport rejectReport = new UserInfoRejectReport(rejectDir, file, skipRows)) {
+            List<UserInfoExcelRow> chunk = new ArrayList<>(commitSize);
+            rowSource.read(userInfoExcelRow -> {
+                // 登録済の行はハッシュ化・insert せずに読み飛ばす
+                if (rowCount.incrementAndGet() <= skipRows) {
+                    return;
+                }
+                if (acceptRow(rowCount.get(), userInfoExcelRow, usernameIndex, rejectReport)) {
+                    chunk.add(userInfoExcelRow);
+                }
+                if (chunk.size() >= commitSize) {
+                    checkpoint.setCommittedRows(rowCount.get());
+                    commitChunk(transactionTemplate, chunk, checkpoint, false);
+                    chunk.clear();
+                }
+            });
+
+            // 最後のチャンクと一緒にチェックポイントを削除する
+            checkpoint.setCommittedRows(rowCount.get());
+            commitChunk(transactionTemplate, chunk, checkpoint, true);
+            logRejects(rejectReport);
+        }
+    }
+
+    private UsernameIndex loadUsernameIndex() {
+        if (!dedupEnabled) {
+            return null;
+        }
+
+        // PostgreSQL では fetchSize を有効にするにはトランザクション内で select する必要がある
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setReadOnly(true);
+        UsernameIndex usernameIndex = transactionTemplate.execute(status ->
+                userInfoDao.selectAllUsernames(usernameStream -> UsernameIndex.build(usernameStream
+                        , username -> userInfoDao.selectCountByUsername(username) > 0)));
+        logger.info("登録済の username を {} 件読み込みました。", usernameIndex.getRegisteredCount());
+        return usernameIndex;
+    }
+
+    private boolean acceptRow(int rowNum, UserInfoExcelRow userInfoExcelRow, UsernameIndex usernameIndex
+            , UserInfoRejectReport rejectReport) {
+        if (usernameIndex == null) {
+            return true;
+        }
+
+        String reason;
+        if (usernameIndex.isRegistered(userInfoExcelRow.getUsername())) {
+            reason = "username が登録済です";
+        } else if (!usernameIndex.addFileUsername(userInfoExcelRow.getUsername())) {
+            reason = "username がファイル内で重複しています";
+        } else {
+            return true;
+        }
+        rejectReport.write(rowNum, userInfoExcelRow, reason);
+        return false;
+    }
+
+    private void logRejects(UserInfoRejectReport rejectReport) {
+        if (rejectReport.getCount() > 0) {
+            logger.warn("{} 件のデータを登録せずに {} に出力しました。"
+                    , rejectReport.getCount(), rejectReport.getReportFile());
+        }
+    }
+
+    private ImportCheckpoint findCheckpoint(File file) {
+        ImportCheckpoint checkpoint = importCheckpointDao.selectById(file.getName());
+        if (checkpoint != null && checkpoint.getFileSize() == file.length()
+                && checkpoint.getLastModified() == file.lastModified()) {
+            return checkpoint;
+        }
+        if (checkpoint != null) {
+            // 同じファイル名で内容が異なるファイルが置かれた場合には最初から登録する
+            logger.info("{} は前回処理時から変更されているため、最初から登録します。", file.getName());
+        }
+
+        checkpoint = new ImportCheckpoint();
+        checkpoint.setFileName(file.getName());
+        checkpoint.setFileSize(file.length());
+        checkpoint.setLastModified(file.lastModified());
+        checkpoint.setCommittedRows(0);
+        return checkpoint;
+    }
+
+    private void commitChunk(TransactionTemplate transactionTemplate, List<UserInfoExcelRow> chunk
+            , ImportCheckpoint checkpoint, boolean completed) {
+        transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(TransactionStatus status) {
+                for (int i = 0; i < chunk.size(); i += batchSize) {
+                    insertChunk(chunk.subList(i, Math.min(i + batchSize, chunk.size())));
+                }
+
+                if (completed) {
+                    importCheckpointDao.delete(checkpoint);
+                } else {
+                    checkpoint.setUpdateTime(LocalDateTime.now());
+                    if (importCheckpointDao.update(checkpoint) == 0) {
+                        importCheckpointDao.insert(checkpoint);
+                    }
+                }
+            }
+        });
+    }
+
+    private void insertChunk(List<UserInfoExcelRow> chunk) {
+        // user_role に user_id をセットする必要があるので、先に user_id をまとめて採番しておく
+        Iterator<Long> userIdIterator = userInfoDao.selectNextUserIds(chunk.size()).iterator();
+
+        // パスワードのハッシュ化はチャンク単位で並列に行う
+        Iterator<String> encodedPasswordIterator = userInfoPasswordEncoder.encode(chunk.stream()
+                .map(UserInfoExcelRow::getPassword)
+                .collect(Collectors.toList())).iterator();
+
+        List<UserInfo> userInfoList = new ArrayList<>(chunk.size());
+        List<UserRole> userRoleList = new ArrayList<>();
+        chunk.forEach(userInfoExcelRow -> {
+            UserInfo userInfo = makeUserInfo(userInfoExcelRow, encodedPasswordIterator.next());
+            userInfo.setUserId(userIdIterator.next());
+            userInfoList.add(userInfo);
+
+            userInfoExcelRow.getRoleListFromRoles().forEach(role ->
+                    userRoleList.add(makeUserRole(userInfo.getUserId(), role)));
+        });
+
+        userInfoDao.insertBatch(userInfoList);
+        if (!userRoleList.isEmpty()) {
+            userRoleDao.insertBatch(userRoleList);
+        }
+    }
+
+    private UserInfo makeUserInfo(UserInfoExcelRow userInfoExcelRow, String encodedPassword) {
         UserInfo userInfo = new UserInfo();
         BeanUtils.copyProperties(userInfoExcelRow, userInfo);
-        userInfo.setPassword(new BCryptPasswordEncoder().encode(userInfoExcelRow.getPassword()));
+        userInfo.setPassword(encodedPassword);
         userInfo.setEnabled((short) 1);
         userInfo.setCntBadcredentials((short) 0);
         userInfo.setExpiredAccount(LocalDateTime.now().plusMonths(3));
@@ -93,4 +333,16 @@ public class UserInfoService {
         return userRole;
     }
 
+    /**
+     * Excel, CSV/TSV ファイルから1行ずつ読み込んで consumer に渡す処理。
+     * CSV/TSV は IOException しか throw しないので、Excel で throw される例外は型パラメータで指定する
+     * ( CSV/TSV の場合は RuntimeException に推論される )。
+     */
+    @FunctionalInterface
+    private interface UserInfoRowSource<E1 extends Exception, E2 extends Exception> {
+
+        int read(Consumer<UserInfoExcelRow> consumer) throws E1, E2, IOException;
+
+    }
+
 }
@@ -0,0 +1,80 @@
+package ksbysample.eipapp.dirchecker.service.userinfo;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * 取り込み開始時に user_info に登録済の username を読み込み、取り込むデータの username の重複をチェックする。
+ * 登録済の username は String ではなく 64bit のハッシュ値をソートした long 配列で保持するので、
+ * 100万件でも 8MB 程度のメモリしか使用しない。ハッシュ値が一致した場合には、ハッシュ値の衝突の可能性があるため
+ * existsInDb で DB に登録済かどうかを確認する。
+ * 取り込み中のファイル内での重複は、ファイル内の username を保持してチェックする。
+ */
+public class UsernameIndex {
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final long[] registeredHashes;
+
+    private final Predicate<String> existsInDb;
+
+    private final Set<String> fileUsernameSet = new HashSet<>();
+
+    private UsernameIndex(long[] registeredHashes, Predicate<String> existsInDb) {
+        this.registeredHashes = registeredHashes;
+        this.existsInDb = existsInDb;
+    }
+
+    /**
+     * @param registeredUsernames user_info に登録済の username
+     * @param existsInDb          username が user_info に登録済かどうかを DB で確認する
+     */
+    public static UsernameIndex build(Stream<String> registeredUsernames, Predicate<String> existsInDb) {
+        long[] registeredHashes = registeredUsernames
+                .mapToLong(UsernameIndex::hash)
+                .sorted()
+                .toArray();
+        return new UsernameIndex(registeredHashes, existsInDb);
+    }
+
+    public int getRegisteredCount() {
+        return registeredHashes.length;
+    }
+
+    /**
+     * @return user_info に登録済の場合には true
+     */
+    public boolean isRegistered(String username) {
+        return Arrays.binarySearch(registeredHashes, hash(username)) >= 0 && existsInDb.test(username);
+    }
+
+    /**
+     * 取り込み中のファイル内の username として追加する。
+     *
+     * @return ファイル内に同じ username が既にあった場合には false
+     */
+    public boolean addFileUsername(String username) {
+        return fileUsernameSet.add(username);
+    }
+
+    /**
+     * FNV-1a ( 64bit ) でハッシュ値を計算する。
+     */
+    static long hash(String value) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            hash ^= c & 0xff;
+            hash *= FNV_PRIME;
+            hash ^= c >>> 8;
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+}
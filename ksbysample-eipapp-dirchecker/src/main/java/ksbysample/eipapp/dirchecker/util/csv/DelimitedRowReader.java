@@ -0,0 +1,197 @@
+package ksbysample.eipapp.dirchecker.util.csv;
+
+import ksbysample.eipapp.dirchecker.util.excel.ExcelRowMapping;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.SimpleTypeConverter;
+import org.springframework.util.ReflectionUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.lang.reflect.Method;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * CSV/TSV ファイルを1行ずつ読み込み、{@link ExcelRowMapping} に従って生成したオブジェクトを consumer に渡す。
+ * Excel と同じ reader 定義を使用し、列番号 ( mapping の col 属性 ) でプロパティにセットする。
+ * startRow より前の行 ( ヘッダ行 ) は読み飛ばし、loopbreakcondition の列が空の行で読み込みを終了する。
+ * ダブルクォートで囲まれた値 ( 区切り文字・改行・"" を含む値 ) に対応している。
+ * 読み込みバッファと値を組み立てる StringBuilder は使い回し、mapping に定義されている列と loopbreakcondition の列
+ * 以外は String を生成しない。
+ */
+public class DelimitedRowReader<T> {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final int EOF = -1;
+
+    private static final char QUOTE = '"';
+
+    private static final char BOM = '\uFEFF';
+
+    private final ExcelRowMapping mapping;
+
+    private final Class<T> rowType;
+
+    private final char delimiter;
+
+    private final Charset charset;
+
+    // 値を保持する列 ( mapping に定義されている列と loopbreakcondition の列 ) は true
+    private final boolean[] storeColumns;
+
+    private final SimpleTypeConverter typeConverter = new SimpleTypeConverter();
+
+    public DelimitedRowReader(ExcelRowMapping mapping, Class<T> rowType, char delimiter, Charset charset) {
+        if (!rowType.isAssignableFrom(mapping.getVarType())) {
+            throw new IllegalArgumentException(
+                    String.format("%s は %s に代入できません。", mapping.getVarType().getName(), rowType.getName()));
+        }
+        this.mapping = mapping;
+        this.rowType = rowType;
+        this.delimiter = delimiter;
+        this.charset = charset;
+        this.storeColumns = new boolean[Math.max(mapping.getBreakColumn()
+                , mapping.getColumnSetterMap().isEmpty() ? 0 : Collections.max(mapping.getColumnSetterMap().keySet())) + 1];
+        mapping.getColumnSetterMap().keySet().forEach(col -> this.storeColumns[col] = true);
+        this.storeColumns[mapping.getBreakColumn()] = true;
+    }
+
+    /**
+     * @param file     読み込む CSV/TSV ファイル
+     * @param consumer 1行読み込む毎に呼び出される
+     * @return 読み込んだ行数
+     */
+    public int read(File file, Consumer<? super T> consumer) throws IOException {
+        int count = 0;
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), charset)) {
+            Parser parser = new Parser(reader);
+            String[] values = new String[storeColumns.length];
+            for (int rowNum = 0; parser.nextRecord(values); rowNum++) {
+                if (rowNum < mapping.getStartRow()) {
+                    continue;
+                }
+                if (StringUtils.isEmpty(values[mapping.getBreakColumn()])) {
+                    break;
+                }
+
+                Object row = mapping.newRow();
+                for (Map.Entry<Integer, Method> entry : mapping.getColumnSetterMap().entrySet()) {
+                    Method setter = entry.getValue();
+                    Object value = typeConverter.convertIfNecessary(values[entry.getKey()]
+                            , setter.getParameterTypes()[0]);
+                    ReflectionUtils.invokeMethod(setter, row, value);
+                }
+                consumer.accept(rowType.cast(row));
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private class Parser {
+
+        private final Reader reader;
+
+        private final char[] buffer = new char[BUFFER_SIZE];
+
+        private final StringBuilder sb = new StringBuilder();
+
+        private int pos = 0;
+
+        private int limit = 0;
+
+        private boolean firstChar = true;
+
+        private Parser(Reader reader) {
+            this.reader = reader;
+        }
+
+        /**
+         * 1レコード分の値を values にセットする。storeColumns が true の列以外は読み飛ばす ( null のままにする )。
+         *
+         * @return ファイルの最後に達してレコードがなかった場合には false
+         */
+        private boolean nextRecord(String[] values) throws IOException {
+            Arrays.fill(values, null);
+            int c = read();
+            if (c == EOF) {
+                return false;
+            }
+
+            int col = 0;
+            while (true) {
+                boolean store = col < storeColumns.length && storeColumns[col];
+                sb.setLength(0);
+                if (c == QUOTE) {
+                    // ダブルクォートで囲まれた値は、次の単独のダブルクォートまでを値とする
+                    while (true) {
+                        c = read();
+                        if (c == EOF) {
+                            break;
+                        }
+                        if (c == QUOTE) {
+                            c = read();
+                            if (c != QUOTE) {
+                                break;
+                            }
+                        }
+                        if (store) {
+                            sb.append((char) c);
+                        }
+                    }
+                }
+                while (c != EOF && c != delimiter && c != '\r' && c != '\n') {
+                    if (store) {
+                        sb.append((char) c);
+                    }
+                    c = read();
+                }
+                if (store) {
+                    values[col] = sb.toString();
+                }
+                col++;
+
+                if (c == delimiter) {
+                    c = read();
+                    continue;
+                }
+                if (c == '\r') {
+                    c = read();
+                    if (c != '\n' && c != EOF) {
+                        pos--;
+                    }
+                }
+                return true;
+            }
+        }
+
+        private int read() throws IOException {
+            if (pos >= limit) {
+                limit = reader.read(buffer, 0, buffer.length);
+                pos = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    return EOF;
+                }
+            }
+            char c = buffer[pos++];
+            if (firstChar) {
+                firstChar = false;
+                // BOM 付き UTF-8 で保存されたファイルの BOM は読み飛ばす
+                if (c == BOM) {
+                    return read();
+                }
+            }
+            return c;
+        }
+
+    }
+
+}
@@ -0,0 +1,58 @@
+package ksbysample.eipapp.dirchecker.util.doma;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * suppressOptimisticLockException = true の @BatchUpdate の結果を、更新できた entity と
+ * version が一致せず更新できなかった entity に分ける。
+ * Doma は更新できなかった entity の version もインクリメントするので、conflictList の entity を再更新する場合には
+ * selectById 等で取得し直すこと。
+ */
+public class BatchUpdateResult<E> {
+
+    private final List<E> updatedList;
+
+    private final List<E> conflictList;
+
+    private BatchUpdateResult(List<E> updatedList, List<E> conflictList) {
+        this.updatedList = Collections.unmodifiableList(updatedList);
+        this.conflictList = Collections.unmodifiableList(conflictList);
+    }
+
+    /**
+     * @param entities @BatchUpdate メソッドに渡した entity のリスト
+     * @param counts   @BatchUpdate メソッドの戻り値 ( 行毎の更新件数 )
+     */
+    public static <E> BatchUpdateResult<E> of(List<E> entities, int[] counts) {
+        if (entities.size() != counts.length) {
+            throw new IllegalArgumentException(String.format("entity の件数 ( %d ) と更新件数の件数 ( %d ) が一致しません。"
+                    , entities.size(), counts.length));
+        }
+
+        List<E> updatedList = new ArrayList<>();
+        List<E> conflictList = new ArrayList<>();
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] == 0) {
+                conflictList.add(entities.get(i));
+            } else {
+                updatedList.add(entities.get(i));
+            }
+        }
+        return new BatchUpdateResult<>(updatedList, conflictList);
+    }
+
+    public List<E> getUpdatedList() {
+        return updatedList;
+    }
+
+    public List<E> getConflictList() {
+        return conflictList;
+    }
+
+    public boolean hasConflict() {
+        return !conflictList.isEmpty();
+    }
+
+}
@@ -0,0 +1,120 @@
+package ksbysample.eipapp.dirchecker.util.excel;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.BeanUtils;
+import org.springframework.util.ClassUtils;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.beans.PropertyDescriptor;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * jXLS の reader 定義ファイル ( xxx-excel-cfg.xml ) から、ストリーミング読み込み用の
+ * 列→プロパティのマッピングを生成したもの。
+ * 1行 = 1オブジェクトの loop が1つだけ定義されたシートのみサポートする。
+ */
+public class ExcelRowMapping {
+
+    private final String sheetName;
+
+    private final int startRow;
+
+    private final int breakColumn;
+
+    private final Class<?> varType;
+
+    private final Map<Integer, Method> columnSetterMap;
+
+    private ExcelRowMapping(String sheetName, int startRow, int breakColumn, Class<?> varType
+            , Map<Integer, Method> columnSetterMap) {
+        this.sheetName = sheetName;
+        this.startRow = startRow;
+        this.breakColumn = breakColumn;
+        this.varType = varType;
+        this.columnSetterMap = Collections.unmodifiableMap(columnSetterMap);
+    }
+
+    public static ExcelRowMapping fromXml(InputStream isExcelCfgXml) throws IOException, SAXException {
+        Document document;
+        try {
+            document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(isExcelCfgXml);
+        } catch (ParserConfigurationException e) {
+            throw new RuntimeException(e);
+        }
+
+        Element worksheet = singleElement(document.getDocumentElement(), "worksheet");
+        Element loop = singleElement(worksheet, "loop");
+        int startRow = Integer.parseInt(loop.getAttribute("startRow"));
+        if (startRow != Integer.parseInt(loop.getAttribute("endRow"))) {
+            throw new IllegalArgumentException("1行 = 1データ以外の loop 定義はサポートしていません。");
+        }
+
+        Class<?> varType = ClassUtils.resolveClassName(loop.getAttribute("varType"), null);
+        String varPrefix = loop.getAttribute("var") + ".";
+        Map<Integer, Method> columnSetterMap = new TreeMap<>();
+        NodeList mappingList = loop.getElementsByTagName("mapping");
+        for (int i = 0; i < mappingList.getLength(); i++) {
+            Element mapping = (Element) mappingList.item(i);
+            String propertyName = StringUtils.removeStart(mapping.getTextContent().trim(), varPrefix);
+            PropertyDescriptor pd = BeanUtils.getPropertyDescriptor(varType, propertyName);
+            if (pd == null || pd.getWriteMethod() == null) {
+                throw new IllegalArgumentException(
+                        String.format("%s に書き込み可能なプロパティ %s がありません。", varType.getName(), propertyName));
+            }
+            columnSetterMap.put(Integer.parseInt(mapping.getAttribute("col")), pd.getWriteMethod());
+        }
+
+        // loopbreakcondition の cellcheck で指定された列が空ならそこで読み込みを終了する
+        int breakColumn = 0;
+        NodeList cellcheckList = loop.getElementsByTagName("cellcheck");
+        if (cellcheckList.getLength() > 0) {
+            breakColumn = Integer.parseInt(((Element) cellcheckList.item(0)).getAttribute("offset"));
+        }
+
+        return new ExcelRowMapping(worksheet.getAttribute("name"), startRow, breakColumn, varType, columnSetterMap);
+    }
+
+    private static Element singleElement(Element parent, String tagName) {
+        NodeList nodeList = parent.getElementsByTagName(tagName);
+        if (nodeList.getLength() != 1) {
+            throw new IllegalArgumentException(
+                    String.format("<%s> は1つだけ定義されている必要があります。", tagName));
+        }
+        return (Element) nodeList.item(0);
+    }
+
+    public String getSheetName() {
+        return sheetName;
+    }
+
+    public int getStartRow() {
+        return startRow;
+    }
+
+    public int getBreakColumn() {
+        return breakColumn;
+    }
+
+    public Class<?> getVarType() {
+        return varType;
+    }
+
+    public Map<Integer, Method> getColumnSetterMap() {
+        return columnSetterMap;
+    }
+
+    public Object newRow() {
+        return BeanUtils.instantiate(varType);
+    }
+
+}
@@ -0,0 +1,99 @@
+package ksbysample.eipapp.dirchecker.util.excel;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.jxls.reader.ReaderBuilder;
+import org.jxls.reader.XLSReadStatus;
+import org.jxls.reader.XLSReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
+import org.xml.sax.SAXException;
+
+import javax.annotation.PostConstruct;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Excel の reader 定義ファイル ( xxx-excel-cfg.xml ) を起動時に1度だけ読み込んで保持する。
+ * 定義はファイル名の "-excel-cfg.xml" より前の部分 ( userinfo-excel-cfg.xml なら "userinfo" ) で登録される。
+ * jar 内からも読み込めるよう、Resource#getFile ではなく Resource#getInputStream で読み込む。
+ */
+@Component
+public class ExcelRowMappingRegistry {
+
+    private static final String EXCEL_CFG_XML_SUFFIX = "-excel-cfg.xml";
+
+    private static final String EXCEL_CFG_XML_LOCATION_PATTERN
+            = "classpath*:ksbysample/eipapp/dirchecker/**/*" + EXCEL_CFG_XML_SUFFIX;
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final Map<String, Entry> entryMap = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() throws IOException, SAXException {
+        Resource[] resources = new PathMatchingResourcePatternResolver().getResources(EXCEL_CFG_XML_LOCATION_PATTERN);
+        for (Resource resource : resources) {
+            register(StringUtils.removeEnd(resource.getFilename(), EXCEL_CFG_XML_SUFFIX), resource);
+        }
+    }
+
+    public void register(String name, Resource rsExcelCfgXml) throws IOException, SAXException {
+        byte[] excelCfgXml;
+        try (InputStream isExcelCfgXml = rsExcelCfgXml.getInputStream()) {
+            excelCfgXml = StreamUtils.copyToByteArray(isExcelCfgXml);
+        }
+
+        Entry entry = new Entry(ExcelRowMapping.fromXml(new ByteArrayInputStream(excelCfgXml))
+                , ReaderBuilder.buildFromXML(new ByteArrayInputStream(excelCfgXml)));
+        if (entryMap.putIfAbsent(name, entry) != null) {
+            throw new IllegalStateException(String.format("Excel の reader 定義 %s が重複しています。", name));
+        }
+        logger.info("Excel の reader 定義 {} を登録しました ( {} )。", name, rsExcelCfgXml.getDescription());
+    }
+
+    public ExcelRowMapping getMapping(String name) {
+        return getEntry(name).mapping;
+    }
+
+    /**
+     * jXLS で Excel ファイル全体を読み込む。XLSReader はスレッドセーフではないので、
+     * 同じ定義を使用する読み込みは1つずつ実行される。
+     */
+    public XLSReadStatus read(String name, InputStream isExcel, Map<String, Object> beans)
+            throws IOException, InvalidFormatException {
+        Entry entry = getEntry(name);
+        synchronized (entry.xlsReader) {
+            return entry.xlsReader.read(isExcel, beans);
+        }
+    }
+
+    private Entry getEntry(String name) {
+        Entry entry = entryMap.get(name);
+        if (entry == null) {
+            throw new IllegalArgumentException(String.format("Excel の reader 定義 %s は登録されていません。", name));
+        }
+        return entry;
+    }
+
+    private static class Entry {
+
+        private final ExcelRowMapping mapping;
+
+        private final XLSReader xlsReader;
+
+        private Entry(ExcelRowMapping mapping, XLSReader xlsReader) {
+            this.mapping = mapping;
+            this.xlsReader = xlsReader;
+        }
+
+    }
+
+}
@@ -0,0 +1,194 @@
+package ksbysample.eipapp.dirchecker.util.excel;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.springframework.beans.SimpleTypeConverter;
+import org.springframework.util.ReflectionUtils;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.util.function.Consumer;
+
+/**
+ * POI の event API ( SAX ) で .xlsx ファイルを1行ずつ読み込み、{@link ExcelRowMapping} に従って
+ * 生成したオブジェクトを consumer に渡す。
+ * Workbook 全体をメモリに展開しないので、ファイルサイズに関係なくメモリ使用量はほぼ一定になる。
+ */
+public class ExcelRowStreamReader<T> {
+
+    private final ExcelRowMapping mapping;
+
+    private final Class<T> rowType;
+
+    private final SimpleTypeConverter typeConverter = new SimpleTypeConverter();
+
+    public ExcelRowStreamReader(ExcelRowMapping mapping, Class<T> rowType) {
+        if (!rowType.isAssignableFrom(mapping.getVarType())) {
+            throw new IllegalArgumentException(
+                    String.format("%s は %s に代入できません。", mapping.getVarType().getName(), rowType.getName()));
+        }
+        this.mapping = mapping;
+        this.rowType = rowType;
+    }
+
+    /**
+     * @param excelFile 読み込む .xlsx ファイル
+     * @param consumer  1行読み込む毎に呼び出される
+     * @return 読み込んだ行数
+     */
+    public int read(File excelFile, Consumer<? super T> consumer)
+            throws IOException, SAXException, OpenXML4JException {
+        OPCPackage pkg = OPCPackage.open(excelFile, PackageAccess.READ);
+        try {
+            XSSFReader xssfReader = new XSSFReader(pkg);
+            ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(pkg);
+            XSSFReader.SheetIterator sheetIterator = (XSSFReader.SheetIterator) xssfReader.getSheetsData();
+            while (sheetIterator.hasNext()) {
+                try (InputStream isSheet = sheetIterator.next()) {
+                    if (StringUtils.equals(sheetIterator.getSheetName(), mapping.getSheetName())) {
+                        RowHandler rowHandler = new RowHandler(consumer);
+                        parseSheet(isSheet, new XSSFSheetXMLHandler(xssfReader.getStylesTable(), null, strings
+                                , rowHandler, new DataFormatter(), false));
+                        return rowHandler.count;
+                    }
+                }
+            }
+        } finally {
+            // READ モードで open したファイルは close ではなく revert で閉じる
+            pkg.revert();
+        }
+
+        throw new IllegalArgumentException(
+                String.format("シート %s が存在しません ( %s )。", mapping.getSheetName(), excelFile.getName()));
+    }
+
+    private void parseSheet(InputStream isSheet, XSSFSheetXMLHandler handler) throws IOException, SAXException {
+        try {
+            XMLReader xmlReader = newSecureXMLReader();
+            xmlReader.setContentHandler(handler);
+            xmlReader.parse(new InputSource(isSheet));
+        } catch (EndOfRowsException ignored) {
+            // loopbreakcondition に該当する行まで読み込んだ
+        } catch (SAXException e) {
+            if (!(e.getException() instanceof EndOfRowsException)) {
+                throw e;
+            }
+        } catch (ParserConfigurationException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 外部から置かれたファイルを読み込むので、XXE ( 外部エンティティ参照 ) や DOCTYPE によるエンティティ展開を
+     * 行わない XMLReader を生成する。.xlsx のシートの XML に DOCTYPE 宣言が含まれることはないので、
+     * DOCTYPE 宣言がある場合にはエラーにする。
+     */
+    private static XMLReader newSecureXMLReader() throws SAXException, ParserConfigurationException {
+        SAXParserFactory factory = SAXParserFactory.newInstance();
+        factory.setNamespaceAware(true);
+        factory.setXIncludeAware(false);
+        factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+        factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+        factory.setFeature("http://xml.org/sax/features/external-general-entities", false);
+        factory.setFeature("http://xml.org/sax/features/external-parameter-entities", false);
+        factory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+        return factory.newSAXParser().getXMLReader();
+    }
+
+    private class RowHandler implements XSSFSheetXMLHandler.SheetContentsHandler {
+
+        private final Consumer<? super T> consumer;
+
+        private int expectedRowNum = mapping.getStartRow();
+
+        private int count = 0;
+
+        private Object row;
+
+        private boolean hasBreakColumnValue;
+
+        private int nextCol;
+
+        private RowHandler(Consumer<? super T> consumer) {
+            this.consumer = consumer;
+        }
+
+        @Override
+        public void startRow(int rowNum) {
+            if (rowNum < mapping.getStartRow()) {
+                return;
+            }
+            // 空行は XML 上に出力されないので、行番号が飛んでいたらそこで終了する
+            if (rowNum != expectedRowNum) {
+                throw new EndOfRowsException();
+            }
+            row = mapping.newRow();
+            hasBreakColumnValue = false;
+            nextCol = 0;
+        }
+
+        @Override
+        public void endRow(int rowNum) {
+            if (row == null) {
+                return;
+            }
+            if (!hasBreakColumnValue) {
+                throw new EndOfRowsException();
+            }
+            consumer.accept(rowType.cast(row));
+            row = null;
+            count++;
+            expectedRowNum = rowNum + 1;
+        }
+
+        @Override
+        public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+            if (row == null) {
+                return;
+            }
+            // セル参照 ( r 属性 ) が出力されていないファイルの場合には直前のセルの次の列とみなす
+            int col = cellReference != null ? new CellReference(cellReference).getCol() : nextCol;
+            nextCol = col + 1;
+            if (col == mapping.getBreakColumn() && StringUtils.isNotEmpty(formattedValue)) {
+                hasBreakColumnValue = true;
+            }
+            Method setter = mapping.getColumnSetterMap().get(col);
+            if (setter != null) {
+                Object value = typeConverter.convertIfNecessary(formattedValue, setter.getParameterTypes()[0]);
+                ReflectionUtils.invokeMethod(setter, row, value);
+            }
+        }
+
+        @Override
+        public void headerFooter(String text, boolean isHeader, String tagName) {
+        }
+
+    }
+
+    private static class EndOfRowsException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        private EndOfRowsException() {
+            super(null, null, false, false);
+        }
+
+    }
+
+}
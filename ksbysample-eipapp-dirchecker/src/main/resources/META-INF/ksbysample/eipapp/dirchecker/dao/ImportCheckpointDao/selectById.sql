@@ -0,0 +1,6 @@
+select
+  /*%expand*/*
+from
+  import_checkpoint
+where
+  file_name = /* fileName */'a'
@@ -0,0 +1,11 @@
+select
+  /*%expand*/*
+from
+  lending_book
+/*%if lastLendingBookId != null */
+where
+  lending_book_id > /* lastLendingBookId */0
+/*%end*/
+order by
+  lending_book_id
+limit /* limit */1000
@@ -0,0 +1,6 @@
+select
+  /*%expand*/*
+from
+  lending_book
+order by
+  lending_book_id
@@ -0,0 +1,8 @@
+select
+  /*%expand*/*
+from
+  lending_book
+where
+  lending_book_id in /* lendingBookIds */(1, 2)
+order by
+  lending_book_id
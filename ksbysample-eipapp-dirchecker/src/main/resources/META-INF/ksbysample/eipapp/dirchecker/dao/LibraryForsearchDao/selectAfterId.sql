@@ -0,0 +1,11 @@
+select
+  /*%expand*/*
+from
+  library_forsearch
+/*%if lastSystemid != null */
+where
+  systemid > /* lastSystemid */''
+/*%end*/
+order by
+  systemid
+limit /* limit */1000
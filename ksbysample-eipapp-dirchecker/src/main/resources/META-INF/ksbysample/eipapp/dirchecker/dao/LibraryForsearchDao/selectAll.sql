@@ -0,0 +1,6 @@
+select
+  /*%expand*/*
+from
+  library_forsearch
+order by
+  systemid
@@ -0,0 +1,8 @@
+select
+  /*%expand*/*
+from
+  library_forsearch
+where
+  systemid in /* systemids */('a', 'b')
+order by
+  systemid
@@ -0,0 +1,19 @@
+insert into user_info (
+  user_id
+  , username
+  , password
+  , mail_address
+  , enabled
+  , cnt_badcredentials
+  , expired_account
+  , expired_password
+) values (
+  /* entities.userId */1
+  , /* entities.username */'a'
+  , /* entities.password */'a'
+  , /* entities.mailAddress */'a'
+  , /* entities.enabled */1
+  , /* entities.cntBadcredentials */0
+  , /* entities.expiredAccount */'2016-01-01 00:00:00'
+  , /* entities.expiredPassword */'2016-01-01 00:00:00'
+)
@@ -0,0 +1,4 @@
+select
+  username
+from
+  user_info
@@ -0,0 +1,6 @@
+select
+  count(*)
+from
+  user_info
+where
+  username = /* username */'a'
@@ -0,0 +1,6 @@
+select
+  nextval('user_info_user_id_seq') as user_id
+from
+  generate_series(1, /* count */1)
+order by
+  user_id
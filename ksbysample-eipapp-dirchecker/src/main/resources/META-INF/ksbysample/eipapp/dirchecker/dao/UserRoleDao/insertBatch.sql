@@ -0,0 +1,7 @@
+insert into user_role (
+  user_id
+  , role
+) values (
+  /* entities.userId */1
+  , /* entities.role */'a'
+)
@@ -0,0 +1,155 @@
+package ksbysample.eipapp.dirchecker.service.userinfo
+
+import ksbysample.eipapp.dirchecker.util.csv.DelimitedRowReader
+import ksbysample.eipapp.dirchecker.util.excel.ExcelRowMapping
+import org.junit.Rule
+import org.junit.rules.TemporaryFolder
+import spock.lang.Specification
+
+import java.nio.charset.StandardCharsets
+
+class DelimitedRowReaderTest extends Specification {
+
+    static final String HEADER = "username,password,mail_address,roles\r\n"
+
+    // DelimitedRowReader の読み込みバッファのサイズ
+    static final int BUFFER_SIZE = 64 * 1024
+
+    @Rule
+    TemporaryFolder temporaryFolder = new TemporaryFolder()
+
+    ExcelRowMapping userInfoMapping
+
+    def setup() {
+        getClass().getResourceAsStream("/ksbysample/eipapp/dirchecker/service/userinfo/userinfo-excel-cfg.xml")
+                .withCloseable { userInfoMapping = ExcelRowMapping.fromXml(it) }
+    }
+
+    def "ダブルクォートで囲まれた値の区切り文字・改行は値として読み込む"() {
+        given:
+        def file = writeFile(HEADER + '"yota, takahashi",12345678,"yota.takahashi\r\n@test.co.jp","ROLE_ADMIN,ROLE_USER"\r\n')
+
+        when:
+        def rowList = read(userInfoMapping, ',', file)
+
+        then:
+        rowList*.username == ["yota, takahashi"]
+        rowList*.mailAddress == ["yota.takahashi\r\n@test.co.jp"]
+        rowList*.roles == ["ROLE_ADMIN,ROLE_USER"]
+    }
+
+    def "ダブルクォートで囲まれた値の \"\" は \" として読み込む"() {
+        given:
+        def file = writeFile(HEADER + '"yota ""y"" takahashi",12345678,yota.takahashi@test.co.jp,""\r\n')
+
+        when:
+        def rowList = read(userInfoMapping, ',', file)
+
+        then:
+        rowList*.username == ['yota "y" takahashi']
+        rowList*.roles == [""]
+    }
+
+    def "先頭の BOM は読み飛ばす"() {
+        given: "ヘッダ行がない ( startRow = 0 の ) ファイルの先頭に BOM を付ける"
+        def file = writeFile("\uFEFFyota takahashi,12345678,yota.takahashi@test.co.jp,ROLE_USER\n")
+
+        when:
+        def rowList = read(mapping(0, [0: "username", 1: "password", 2: "mailAddress", 3: "roles"]), ',', file)
+
+        then:
+        rowList*.username == ["yota takahashi"]
+    }
+
+    def "CRLF の CR と LF が読み込みバッファの境界で分かれても1つの改行として扱う"() {
+        given: "1行目の CR がバッファの最後 ( BUFFER_SIZE - 1 文字目 ) になるようにする"
+        def tail = ",12345678,yota.takahashi@test.co.jp,ROLE_USER"
+        def longUsername = "x" * (BUFFER_SIZE - 1 - HEADER.length() - tail.length())
+        def content = HEADER + longUsername + tail + "\r\n" + "aoi inoue,abcdefgh,aoi.inoue@sample.com,ROLE_USER\r\n"
+        assert content.indexOf("\r", HEADER.length()) == BUFFER_SIZE - 1
+        def file = writeFile(content)
+
+        when:
+        def rowList = read(userInfoMapping, ',', file)
+
+        then: "LF で空行と判定されて読み込みが終了しない"
+        rowList*.username == [longUsername, "aoi inoue"]
+        rowList*.roles == ["ROLE_USER", "ROLE_USER"]
+    }
+
+    def "閉じられていないダブルクォートはファイルの最後までを値とする"() {
+        given:
+        def file = writeFile(HEADER + "yota takahashi,12345678,yota.takahashi@test.co.jp,ROLE_USER\r\n"
+                + '"aoi inoue,abcdefgh')
+
+        when:
+        def rowList = read(userInfoMapping, ',', file)
+
+        then:
+        rowList*.username == ["yota takahashi", "aoi inoue,abcdefgh"]
+        rowList*.password == ["12345678", null]
+    }
+
+    def "TSV はタブで区切り、カンマは値として読み込む"() {
+        given:
+        def file = writeFile("username\tpassword\tmail_address\troles\n"
+                + "yota takahashi\t12345678\tyota.takahashi@test.co.jp\tROLE_ADMIN,ROLE_USER\n")
+
+        when:
+        def rowList = read(userInfoMapping, '\t', file)
+
+        then:
+        rowList*.username == ["yota takahashi"]
+        rowList*.password == ["12345678"]
+        rowList*.roles == ["ROLE_ADMIN,ROLE_USER"]
+    }
+
+    def "mapping に定義されていない列と最後の mapping より後ろの列は読み込まない"() {
+        given:
+        def file = writeFile(HEADER + "yota takahashi,12345678,yota.takahashi@test.co.jp,ROLE_USER,extra\r\n")
+
+        when:
+        def rowList = read(mapping(1, [0: "username", 2: "mailAddress"]), ',', file)
+
+        then:
+        rowList*.username == ["yota takahashi"]
+        rowList*.password == [null]
+        rowList*.mailAddress == ["yota.takahashi@test.co.jp"]
+        rowList*.roles == [null]
+    }
+
+    File writeFile(String content) {
+        def file = temporaryFolder.newFile()
+        file.setBytes(content.getBytes(StandardCharsets.UTF_8))
+        file
+    }
+
+    static List<UserInfoExcelRow> read(ExcelRowMapping mapping, String delimiter, File file) {
+        def rowList = []
+        new DelimitedRowReader<UserInfoExcelRow>(mapping, UserInfoExcelRow, delimiter as char, StandardCharsets.UTF_8)
+                .read(file, { rowList << it })
+        rowList
+    }
+
+    static ExcelRowMapping mapping(int startRow, Map<Integer, String> columnPropertyMap) {
+        def mappings = columnPropertyMap.collect { col, property ->
+            """<mapping row="$startRow" col="$col">userInfoExcelRow.$property</mapping>"""
+        }.join()
+        def xml = """<?xml version="1.0" encoding="UTF-8"?>
+<workbook>
+    <worksheet name="Sheet1">
+        <loop startRow="$startRow" endRow="$startRow" items="userInfoExcelRowList" var="userInfoExcelRow"
+              varType="${UserInfoExcelRow.name}">
+            <section startRow="$startRow" endRow="$startRow">$mappings</section>
+            <loopbreakcondition>
+                <rowcheck offset="0">
+                    <cellcheck offset="0"></cellcheck>
+                </rowcheck>
+            </loopbreakcondition>
+        </loop>
+    </worksheet>
+</workbook>"""
+        ExcelRowMapping.fromXml(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)))
+    }
+
+}
@@ -0,0 +1,36 @@
+package ksbysample.eipapp.dirchecker.service.userinfo
+
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder
+import spock.lang.Specification
+
+class UserInfoPasswordEncoderTest extends Specification {
+
+    UserInfoPasswordEncoder userInfoPasswordEncoder
+
+    def setup() {
+        userInfoPasswordEncoder = new UserInfoPasswordEncoder()
+        userInfoPasswordEncoder.bcryptStrength = 4
+        userInfoPasswordEncoder.hashThreads = 3
+        userInfoPasswordEncoder.init()
+    }
+
+    def cleanup() {
+        userInfoPasswordEncoder.shutdown()
+    }
+
+    def "encode はパスワードを並列にハッシュ化し、元の順序で返す"() {
+        given:
+        def rawPasswordList = (1..20).collect { "password${it}".toString() }
+
+        when:
+        def encodedPasswordList = userInfoPasswordEncoder.encode(rawPasswordList)
+
+        then:
+        encodedPasswordList.size() == 20
+        [rawPasswordList, encodedPasswordList].transpose().every { raw, encoded ->
+            new BCryptPasswordEncoder().matches(raw, encoded)
+        }
+        userInfoPasswordEncoder.hashedCount == 20
+    }
+
+}
@@ -0,0 +1,56 @@
+package ksbysample.eipapp.dirchecker.service.userinfo
+
+import org.junit.Rule
+import org.junit.rules.TemporaryFolder
+import spock.lang.Specification
+
+class UserInfoRejectReportTest extends Specification {
+
+    @Rule
+    TemporaryFolder temporaryFolder = new TemporaryFolder()
+
+    def "途中から再開した場合は、コミット済の行より後に出力されていたデータを削除してから追記する"() {
+        given:
+        File rejectDir = temporaryFolder.newFolder("reject")
+        File importFile = new File("users.xlsx")
+        new UserInfoRejectReport(rejectDir, importFile, 0).withCloseable {
+            it.write(2, row("tanaka taro"), "username が登録済です")
+            it.write(5, row("suzuki hanako"), "username が登録済です")
+        }
+
+        when: "3行目までコミットされた後に再開し、5行目を再度出力する"
+        new UserInfoRejectReport(rejectDir, importFile, 3).withCloseable {
+            it.write(5, row("suzuki hanako"), "username が登録済です")
+        }
+
+        then:
+        new File(rejectDir, "users.xlsx.rejects.csv").readLines("UTF-8") == [
+                '2,"tanaka taro","tanaka taro@test.co.jp","username が登録済です"',
+                '5,"suzuki hanako","suzuki hanako@test.co.jp","username が登録済です"'
+        ]
+    }
+
+    def "最初から取り込む場合は前回出力したファイルを上書きする"() {
+        given:
+        File rejectDir = temporaryFolder.newFolder("reject")
+        File importFile = new File("users.xlsx")
+        new UserInfoRejectReport(rejectDir, importFile, 0).withCloseable {
+            it.write(2, row("tanaka taro"), "username が登録済です")
+        }
+
+        when:
+        new UserInfoRejectReport(rejectDir, importFile, 0).withCloseable {
+            it.write(7, row("aoi inoue"), "username がファイル内で重複しています")
+        }
+
+        then:
+        new File(rejectDir, "users.xlsx.rejects.csv").readLines("UTF-8") == [
+                '7,"aoi inoue","aoi inoue@test.co.jp","username がファイル内で重複しています"'
+        ]
+    }
+
+    static UserInfoExcelRow row(String username) {
+        new UserInfoExcelRow(username: username, mailAddress: "$username@test.co.jp")
+    }
+
+}
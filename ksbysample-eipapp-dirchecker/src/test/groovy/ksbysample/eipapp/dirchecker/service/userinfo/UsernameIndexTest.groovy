@@ -0,0 +1,53 @@
+package ksbysample.eipapp.dirchecker.service.userinfo
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.util.function.Predicate
+import java.util.stream.Stream
+
+class UsernameIndexTest extends Specification {
+
+    def registeredUsernames = ["yota takahashi", "aoi inoue", "tanaka taro"]
+
+    @Unroll
+    def "isRegistered(#username) --> #result"() {
+        given:
+        UsernameIndex usernameIndex = UsernameIndex.build(registeredUsernames.stream()
+                , { registeredUsernames.contains(it) } as Predicate<String>)
+
+        expect:
+        usernameIndex.isRegistered(username) == result
+
+        where:
+        username         || result
+        "yota takahashi" || true
+        "aoi inoue"      || true
+        "suzuki hanako"  || false
+        ""               || false
+    }
+
+    def "ハッシュ値が一致しても DB に登録されていなければ登録済と判定しない"() {
+        given:
+        Predicate<String> existsInDb = Mock()
+        UsernameIndex usernameIndex = UsernameIndex.build(Stream.of("yota takahashi"), existsInDb)
+
+        when:
+        def result = usernameIndex.isRegistered("yota takahashi")
+
+        then:
+        1 * existsInDb.test("yota takahashi") >> false
+        !result
+    }
+
+    def "addFileUsername はファイル内で2回目以降の username の時に false を返す"() {
+        given:
+        UsernameIndex usernameIndex = UsernameIndex.build(Stream.empty(), { false } as Predicate<String>)
+
+        expect:
+        usernameIndex.addFileUsername("yota takahashi")
+        usernameIndex.addFileUsername("aoi inoue")
+        !usernameIndex.addFileUsername("yota takahashi")
+    }
+
+}
@@ -0,0 +1,25 @@
+package ksbysample.eipapp.dirchecker.util.doma
+
+import spock.lang.Specification
+
+class BatchUpdateResultTest extends Specification {
+
+    def "更新件数が 0 の entity は conflictList に分けられる"() {
+        when:
+        BatchUpdateResult<String> result = BatchUpdateResult.of(["a", "b", "c", "d"], [1, 0, 1, 0] as int[])
+
+        then:
+        result.updatedList == ["a", "c"]
+        result.conflictList == ["b", "d"]
+        result.hasConflict()
+    }
+
+    def "entity の件数と更新件数の件数が一致しない場合には IllegalArgumentException が throw される"() {
+        when:
+        BatchUpdateResult.of(["a", "b"], [1] as int[])
+
+        then:
+        thrown(IllegalArgumentException)
+    }
+
+}
@@ -0,0 +1,25 @@
+package ksbysample.common.test.rule.db;
+
+/**
+ * TestDataResource がテスト前にテーブルのバックアップを取得し、テスト後にリストアする方法。
+ */
+public enum BackupStrategy {
+
+    /**
+     * FlatXml のファイルに出力し、リストア時にファイルを解析して CLEAN_INSERT する。
+     */
+    FLAT_XML,
+
+    /**
+     * DbUnit の CachedDataSet としてメモリ上に保持し、リストア時にそのまま CLEAN_INSERT する。
+     * ファイルへの出力・解析を行わない分 FLAT_XML より速い。
+     */
+    MEMORY,
+
+    /**
+     * create table ... as select でデータベース内のバックアップ用テーブルにコピーし、
+     * リストア時に delete → insert ... select で戻す。データを JDBC で転送しないので、件数が多い場合に最も速い。
+     */
+    SHADOW_TABLE
+
+}
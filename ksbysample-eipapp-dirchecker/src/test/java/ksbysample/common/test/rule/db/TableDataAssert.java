@@ -3,18 +3,36 @@ package ksbysample.common.test.rule.db;
 import org.dbunit.Assertion;
 import org.dbunit.DatabaseUnitException;
 import org.dbunit.database.IDatabaseConnection;
+import org.dbunit.dataset.Column;
 import org.dbunit.dataset.DataSetException;
 import org.dbunit.dataset.IDataSet;
 import org.dbunit.dataset.ITable;
+import org.dbunit.dataset.ITableMetaData;
 import org.dbunit.dataset.ReplacementDataSet;
 import org.dbunit.dataset.filter.DefaultColumnFilter;
 
 import javax.sql.DataSource;
+import java.math.BigDecimal;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.fail;
 
 public class TableDataAssert {
 
+    private static final int FETCH_SIZE = 1000;
+
+    private static final int MAX_REPORT_ROWS = 100;
+
     private final IDataSet dataSet;
 
     private final DataSource dataSource;
@@ -65,6 +83,101 @@ public class TableDataAssert {
         }
     }
 
+    public void assertEqualsByHash(String tableName)
+            throws DatabaseUnitException, SQLException {
+        assertEqualsByHash(tableName, new String[]{}, AssertOptions.EXCLUDE_COLUM);
+    }
+
+    /**
+     * 件数の多いテーブル用の比較。DB のデータを全件メモリに読み込まずに fetchSize 件ずつ読み込み、
+     * 期待値の CSV の行と主キー ( 主キーの列が比較対象外の場合には行全体 ) で突き合わせて、
+     * 行毎に値を比較する。一致しない行だけを最大 MAX_REPORT_ROWS 行メッセージに出力する。
+     */
+    public void assertEqualsByHash(String tableName, String[] columnNames, AssertOptions options)
+            throws DatabaseUnitException, SQLException {
+        IDatabaseConnection conn = null;
+        try (Connection connection = this.dataSource.getConnection()) {
+            conn = DbUnitUtils.createDatabaseConnection(connection);
+            ITableMetaData metaData = conn.createDataSet().getTableMetaData(tableName);
+            List<Column> columnList = Arrays.stream(metaData.getColumns())
+                    .filter(column -> isTargetColumn(column, columnNames, options))
+                    .collect(Collectors.toList());
+            List<String> columnNameList = columnList.stream()
+                    .map(Column::getColumnName)
+                    .collect(Collectors.toList());
+            List<Integer> keyIndexList = Arrays.stream(metaData.getPrimaryKeys())
+                    .map(column -> columnNameList.indexOf(column.getColumnName()))
+                    .collect(Collectors.toList());
+            if (keyIndexList.isEmpty() || keyIndexList.contains(-1)) {
+                keyIndexList = null;
+            }
+
+            // 期待値はキー→行の値の Map にする。行全体をキーにする場合には同じ行が
+            // 複数ある可能性があるので件数も保持する
+            ITable expected = dataSet.getTable(tableName);
+            Map<String, ExpectedRow> expectedRowMap = new HashMap<>();
+            for (int row = 0; row < expected.getRowCount(); row++) {
+                String[] values = new String[columnList.size()];
+                for (int i = 0; i < columnList.size(); i++) {
+                    Column column = columnList.get(i);
+                    values[i] = normalize(column.getDataType().typeCast(
+                            expected.getValue(row, column.getColumnName())));
+                }
+                expectedRowMap.computeIfAbsent(key(values, keyIndexList), key -> new ExpectedRow(values)).count++;
+            }
+
+            List<String> diffList = new ArrayList<>();
+            int diffCount = 0;
+            boolean autoCommit = connection.getAutoCommit();
+            // PostgreSQL では autoCommit が true だと fetchSize が無視されて全件読み込まれる
+            connection.setAutoCommit(false);
+            try (PreparedStatement ps = connection.prepareStatement("select "
+                    + String.join(", ", columnNameList) + " from " + tableName)) {
+                ps.setFetchSize(FETCH_SIZE);
+                try (ResultSet rs = ps.executeQuery()) {
+                    String[] values = new String[columnList.size()];
+                    while (rs.next()) {
+                        for (int i = 0; i < columnList.size(); i++) {
+                            values[i] = normalize(columnList.get(i).getDataType().getSqlValue(i + 1, rs));
+                        }
+                        String key = key(values, keyIndexList);
+                        ExpectedRow expectedRow = expectedRowMap.get(key);
+                        if (expectedRow == null) {
+                            diffCount++;
+                            addDiff(diffList, "[余分] actual=" + Arrays.toString(values));
+                        } else {
+                            if (!Arrays.equals(expectedRow.values, values)) {
+                                diffCount++;
+                                addDiff(diffList, "[不一致] expected=" + Arrays.toString(expectedRow.values)
+                                        + ", actual=" + Arrays.toString(values));
+                            }
+                            if (--expectedRow.count == 0) {
+                                expectedRowMap.remove(key);
+                            }
+                        }
+                    }
+                }
+            } finally {
+                connection.rollback();
+                connection.setAutoCommit(autoCommit);
+            }
+            for (ExpectedRow expectedRow : expectedRowMap.values()) {
+                diffCount += expectedRow.count;
+                addDiff(diffList, "[不足] expected=" + Arrays.toString(expectedRow.values));
+            }
+
+            if (diffCount > 0) {
+                fail(String.format("%s のデータが %d 行一致しません。 columns=%s%n%s"
+                        , tableName, diffCount, columnNameList, String.join(System.lineSeparator(), diffList)));
+            }
+        } finally {
+            try {
+                if (conn != null) conn.close();
+            } catch (Exception ignored) {
+            }
+        }
+    }
+
     private ITable expectedTable(String tableName, String[] columnNames, AssertOptions options) throws DataSetException {
         ITable table = dataSet.getTable(tableName);
         if (columnNames != null) {
@@ -102,4 +215,64 @@ public class TableDataAssert {
         return table;
     }
 
+    private boolean isTargetColumn(Column column, String[] columnNames, AssertOptions options) {
+        boolean contains = Arrays.stream(columnNames)
+                .anyMatch(columnName -> columnName.equalsIgnoreCase(column.getColumnName()));
+        return options == AssertOptions.EXCLUDE_COLUM ? !contains : contains;
+    }
+
+    private String normalize(Object value) {
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof BigDecimal) {
+            // 1 と 1.00 を同じ値として扱う
+            return ((BigDecimal) value).stripTrailingZeros().toPlainString();
+        }
+        if (value instanceof byte[]) {
+            return Base64.getEncoder().encodeToString((byte[]) value);
+        }
+        return value.toString();
+    }
+
+    /**
+     * 各値を 長さ + ":" + 値 ( null の場合は "-1:" ) で連結してキーにする。値に区切り文字が含まれていても、
+     * null と "null" や ["a, b", "c"] と ["a", "b, c"] が同じキーにならない。
+     */
+    private String key(String[] values, List<Integer> keyIndexList) {
+        StringBuilder sb = new StringBuilder();
+        if (keyIndexList == null) {
+            Arrays.stream(values).forEach(value -> appendKeyValue(sb, value));
+        } else {
+            keyIndexList.forEach(index -> appendKeyValue(sb, values[index]));
+        }
+        return sb.toString();
+    }
+
+    private void appendKeyValue(StringBuilder sb, String value) {
+        if (value == null) {
+            sb.append("-1:");
+        } else {
+            sb.append(value.length()).append(':').append(value);
+        }
+    }
+
+    private void addDiff(List<String> diffList, String diff) {
+        if (diffList.size() < MAX_REPORT_ROWS) {
+            diffList.add(diff);
+        }
+    }
+
+    private static class ExpectedRow {
+
+        private final String[] values;
+
+        private int count = 0;
+
+        private ExpectedRow(String[] values) {
+            this.values = values;
+        }
+
+    }
+
 }
@@ -0,0 +1,109 @@
+package ksbysample.common.test.rule.db;
+
+import ksbysample.eipapp.dirchecker.Application;
+import org.dbunit.dataset.IDataSet;
+import org.dbunit.dataset.csv.CsvDataSet;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import javax.sql.DataSource;
+import java.io.File;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringApplicationConfiguration(classes = Application.class)
+public class TableDataAssertTest {
+
+    private static final String TESTDATA_DIR = "src/test/resources/ksbysample/common/test/rule/db/tabledataassert";
+
+    @Rule
+    @Autowired
+    @TestDataBackup(BackupStrategy.MEMORY)
+    public TestDataResource testDataResource;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private TestDataLoader testDataLoader;
+
+    private JdbcTemplate jdbcTemplate;
+
+    private TableDataAssert tableDataAssert;
+
+    @Before
+    public void setUp() throws Exception {
+        // 期待値と同じデータを登録しておき、各テストで DB のデータを変更してから比較する
+        testDataLoader.load(TESTDATA_DIR);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        IDataSet dataSet = new CsvDataSet(new File(TESTDATA_DIR));
+        tableDataAssert = new TableDataAssert(dataSet, dataSource);
+    }
+
+    @Test
+    public void assertEqualsByHash() throws Exception {
+        tableDataAssert.assertEqualsByHash("user_info");
+        tableDataAssert.assertEqualsByHash("user_role");
+    }
+
+    @Test
+    public void assertEqualsByHashFailsWhenValueChanged() throws Exception {
+        jdbcTemplate.update("update user_info set mail_address = 'aoi.inoue@test.co.jp' where user_id = 2");
+
+        assertThatThrownBy(() -> tableDataAssert.assertEqualsByHash("user_info"))
+                .isInstanceOf(AssertionError.class)
+                .hasMessageContaining("user_info のデータが 1 行一致しません。")
+                .hasMessageContaining("[不一致]")
+                .hasMessageContaining("aoi.inoue@test.co.jp");
+    }
+
+    @Test
+    public void assertEqualsByHashFailsWhenRowMissing() throws Exception {
+        jdbcTemplate.update("delete from user_role where role_id = 3");
+
+        assertThatThrownBy(() -> tableDataAssert.assertEqualsByHash("user_role"))
+                .isInstanceOf(AssertionError.class)
+                .hasMessageContaining("user_role のデータが 1 行一致しません。")
+                .hasMessageContaining("[不足] expected=[3, 2, ROLE_USER]");
+    }
+
+    @Test
+    public void assertEqualsByHashFailsWhenRowAdded() throws Exception {
+        jdbcTemplate.update("insert into user_role (role_id, user_id, role) values (4, 1, 'ROLE_ADMIN')");
+
+        assertThatThrownBy(() -> tableDataAssert.assertEqualsByHash("user_role"))
+                .isInstanceOf(AssertionError.class)
+                .hasMessageContaining("user_role のデータが 1 行一致しません。")
+                .hasMessageContaining("[余分] actual=[4, 1, ROLE_ADMIN]");
+    }
+
+    @Test
+    public void assertEqualsByHashIgnoresExcludedColumns() throws Exception {
+        jdbcTemplate.update("update user_info set password = 'changed', cnt_badcredentials = 3 where user_id = 1");
+
+        tableDataAssert.assertEqualsByHash("user_info"
+                , new String[]{"password", "cnt_badcredentials"}, AssertOptions.EXCLUDE_COLUM);
+        tableDataAssert.assertEqualsByHash("user_info"
+                , new String[]{"user_id", "username", "mail_address"}, AssertOptions.INCLUDE_COLUMN);
+        assertThatThrownBy(() -> tableDataAssert.assertEqualsByHash("user_info"
+                , new String[]{"password"}, AssertOptions.EXCLUDE_COLUM))
+                .isInstanceOf(AssertionError.class)
+                .hasMessageContaining("[不一致]");
+    }
+
+    @Test
+    public void assertEqualsByHashMatchesWholeRowWhenKeyExcluded() throws Exception {
+        // role_id を除外すると行全体がキーになるので、role_id だけが異なる行は一致する
+        jdbcTemplate.update("update user_role set role_id = 10 where role_id = 3");
+
+        tableDataAssert.assertEqualsByHash("user_role", new String[]{"role_id"}, AssertOptions.EXCLUDE_COLUM);
+    }
+
+}
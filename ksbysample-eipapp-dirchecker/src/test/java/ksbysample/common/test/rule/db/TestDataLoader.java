@@ -1,28 +1,81 @@
 package ksbysample.common.test.rule.db;
 
 import org.dbunit.database.IDatabaseConnection;
+import org.dbunit.dataset.DataSetException;
+import org.dbunit.dataset.DefaultDataSet;
 import org.dbunit.dataset.IDataSet;
 import org.dbunit.dataset.ReplacementDataSet;
 import org.dbunit.dataset.csv.CsvDataSet;
 import org.dbunit.operation.DatabaseOperation;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Component;
 
 import javax.sql.DataSource;
 import java.io.File;
 import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 @Component
 public class TestDataLoader {
 
+    private static final int LOAD_THREADS = Math.min(4, Runtime.getRuntime().availableProcessors());
+
     @Autowired
     private DataSource dataSource;
 
+    // 解析済の CSV ファイルのデータをディレクトリ毎にキャッシュする
+    private final Map<String, CachedCsvDir> cachedCsvDirMap = new ConcurrentHashMap<>();
+
+    private final ExecutorService executor;
+
+    public TestDataLoader() {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("testDataLoader-");
+        threadFactory.setDaemon(true);
+        this.executor = Executors.newFixedThreadPool(LOAD_THREADS, threadFactory);
+    }
+
+    /**
+     * csvDir のテストデータを登録する。同じ階層のテーブルは、コネクションプールから取得した別々のコネクションで
+     * 並列に登録する。各コネクションは自動コミットで登録するので、他のコネクションのトランザクション内で
+     * 登録する必要がある場合には {@link #load(IDatabaseConnection, String)} を使用すること。
+     */
     public void load(String csvDir) {
         IDatabaseConnection conn = null;
         try (Connection connection = dataSource.getConnection()) {
             conn = DbUnitUtils.createDatabaseConnection(connection);
-            load(conn, csvDir);
+            CachedCsvDir cachedCsvDir = getCachedCsvDir(conn, csvDir);
+            if (cachedCsvDir.tableLevelList.stream().allMatch(tableList -> tableList.size() == 1)) {
+                // 並列に処理できるテーブルがない場合には、1つのコネクションでまとめて CLEAN_INSERT する
+                DatabaseOperation.CLEAN_INSERT.execute(conn, cachedCsvDir.dataSet);
+                return;
+            }
+
+            // 外部キーで参照しているテーブルから順に削除し、参照されているテーブルから順に登録する。
+            // 同じ階層のテーブルは互いに依存しないので、別々のコネクションで並列に処理する
+            List<List<String>> reverseTableLevelList = new ArrayList<>(cachedCsvDir.tableLevelList);
+            Collections.reverse(reverseTableLevelList);
+            for (List<String> tableList : reverseTableLevelList) {
+                executeInParallel(DatabaseOperation.DELETE_ALL, cachedCsvDir.dataSet, tableList);
+            }
+            for (List<String> tableList : cachedCsvDir.tableLevelList) {
+                executeInParallel(DatabaseOperation.INSERT, cachedCsvDir.dataSet, tableList);
+            }
         } catch (Exception e) {
             throw new RuntimeException(e);
         } finally {
@@ -33,15 +86,113 @@ public class TestDataLoader {
         }
     }
 
+    /**
+     * 渡されたコネクションだけを使用して、csvDir のテストデータを CLEAN_INSERT する。
+     */
     public void load(IDatabaseConnection conn, String csvDir) {
         try {
-            IDataSet dataSet = new CsvDataSet(new File(csvDir));
-            ReplacementDataSet replacementDataset = new ReplacementDataSet(dataSet);
-            replacementDataset.addReplacementObject(DbUnitUtils.NULL_STRING, null);
-            DatabaseOperation.CLEAN_INSERT.execute(conn, replacementDataset);
+            DatabaseOperation.CLEAN_INSERT.execute(conn, getCachedCsvDir(conn, csvDir).dataSet);
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
     }
 
+    private CachedCsvDir getCachedCsvDir(IDatabaseConnection conn, String csvDir)
+            throws DataSetException, SQLException {
+        File dir = new File(csvDir);
+        long lastModified = lastModified(dir);
+        CachedCsvDir cachedCsvDir = cachedCsvDirMap.get(dir.getAbsolutePath());
+        if (cachedCsvDir != null && cachedCsvDir.lastModified == lastModified) {
+            return cachedCsvDir;
+        }
+
+        IDataSet dataSet = new CsvDataSet(dir);
+        ReplacementDataSet replacementDataset = new ReplacementDataSet(dataSet);
+        replacementDataset.addReplacementObject(DbUnitUtils.NULL_STRING, null);
+        cachedCsvDir = new CachedCsvDir(lastModified, replacementDataset
+                , createTableLevelList(conn.getConnection(), dataSet.getTableNames()));
+        cachedCsvDirMap.put(dir.getAbsolutePath(), cachedCsvDir);
+        return cachedCsvDir;
+    }
+
+    private long lastModified(File dir) {
+        long lastModified = dir.lastModified();
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                lastModified = Math.max(lastModified, file.lastModified());
+            }
+        }
+        return lastModified;
+    }
+
+    /**
+     * table-ordering.txt の順に、外部キーで参照しているテーブルが同じデータセット内にあればその1つ下の階層に、
+     * なければ最上位の階層にテーブルを振り分ける。
+     */
+    private List<List<String>> createTableLevelList(Connection connection, String[] tableNames)
+            throws SQLException {
+        Set<String> tableNameSet = new HashSet<>(Arrays.asList(tableNames));
+        Map<String, Integer> tableLevelMap = new HashMap<>();
+        List<List<String>> tableLevelList = new ArrayList<>();
+        DatabaseMetaData metaData = connection.getMetaData();
+        for (String tableName : tableNames) {
+            int level = 0;
+            try (ResultSet rs = metaData.getImportedKeys(null, null, tableName)) {
+                while (rs.next()) {
+                    String pkTableName = rs.getString("PKTABLE_NAME");
+                    if (tableNameSet.contains(pkTableName) && !pkTableName.equals(tableName)) {
+                        level = Math.max(level, tableLevelMap.getOrDefault(pkTableName, 0) + 1);
+                    }
+                }
+            }
+            tableLevelMap.put(tableName, level);
+            while (tableLevelList.size() <= level) {
+                tableLevelList.add(new ArrayList<>());
+            }
+            tableLevelList.get(level).add(tableName);
+        }
+        return tableLevelList;
+    }
+
+    private void executeInParallel(DatabaseOperation operation, IDataSet dataSet, List<String> tableList)
+            throws InterruptedException, ExecutionException {
+        List<Future<?>> futureList = new ArrayList<>();
+        for (String tableName : tableList) {
+            futureList.add(executor.submit(() -> {
+                IDatabaseConnection conn = null;
+                try (Connection connection = dataSource.getConnection()) {
+                    conn = DbUnitUtils.createDatabaseConnection(connection);
+                    operation.execute(conn, new DefaultDataSet(dataSet.getTable(tableName)));
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                } finally {
+                    try {
+                        if (conn != null) conn.close();
+                    } catch (Exception ignored) {
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : futureList) {
+            future.get();
+        }
+    }
+
+    private static class CachedCsvDir {
+
+        private final long lastModified;
+
+        private final IDataSet dataSet;
+
+        private final List<List<String>> tableLevelList;
+
+        private CachedCsvDir(long lastModified, IDataSet dataSet, List<List<String>> tableLevelList) {
+            this.lastModified = lastModified;
+            this.dataSet = dataSet;
+            this.tableLevelList = tableLevelList;
+        }
+
+    }
+
 }
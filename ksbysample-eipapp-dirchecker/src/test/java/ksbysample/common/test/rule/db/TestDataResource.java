@@ -3,6 +3,7 @@ package ksbysample.common.test.rule.db;
 import org.dbunit.DatabaseUnitException;
 import org.dbunit.database.IDatabaseConnection;
 import org.dbunit.database.QueryDataSet;
+import org.dbunit.dataset.CachedDataSet;
 import org.dbunit.dataset.DataSetException;
 import org.dbunit.dataset.IDataSet;
 import org.dbunit.dataset.ReplacementDataSet;
@@ -25,8 +26,11 @@ import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 import static java.util.Comparator.comparing;
@@ -38,6 +42,8 @@ public class TestDataResource extends TestWatcher {
     private static final String TESTDATA_ROOT_DIR = "src/test/resources/ksbysample/eipapp/dirchecker/";
     private static final String BASETESTDATA_DIR = BASETESTDATA_ROOT_DIR + "testdata/base";
     private static final String BACKUP_FILE_NAME = "ksbylending_backup";
+    private static final String SHADOW_TABLE_PREFIX = "tdr_backup_";
+    private static final BackupStrategy DEFAULT_BACKUP_STRATEGY = BackupStrategy.FLAT_XML;
 
     @Autowired
     private DataSource dataSource;
@@ -47,6 +53,10 @@ public class TestDataResource extends TestWatcher {
 
     private File backupFile;
 
+    private IDataSet backupDataSet;
+
+    private List<String> shadowTableList;
+
     @Override
     protected void starting(Description description) {
         // @NouseTestDataResource アノテーションがテストメソッドに付加されていない場合には処理を実行する
@@ -59,10 +69,11 @@ public class TestDataResource extends TestWatcher {
                 String testDataBaseDir = getBaseTestDir(description);
 
                 // バックアップを取得する
-                backupDb(conn, testDataBaseDir);
+                backupDb(conn, testDataBaseDir, getBackupStrategy(description));
 
-                // テストデータをロードする
-                testDataLoader.load(conn, testDataBaseDir);
+                // テストデータをロードする。ベースのテストデータはテーブル数が多いので、同じ階層のテーブルを
+                // 別々のコネクションで並列にロードする
+                testDataLoader.load(testDataBaseDir);
 
                 // @BaseTestSql アノテーションで指定された SQL を実行する
                 TestSqlExecutor<BaseTestSqlList, BaseTestSql> baseTestSqlExecutor
@@ -156,18 +167,64 @@ public class TestDataResource extends TestWatcher {
         return BASETESTDATA_DIR;
     }
 
-    private void backupDb(IDatabaseConnection conn, String testDataBaseDir)
-            throws DataSetException, IOException {
-        QueryDataSet partialDataSet = new QueryDataSet(conn);
+    private BackupStrategy getBackupStrategy(Description description) {
+        // @BaseTestData アノテーションと同様に、テストメソッド→TestDataResource クラスのフィールド→テストクラスの順に
+        // @TestDataBackup アノテーションが付加されているかチェックする
+        TestDataBackup testDataBackup = description.getAnnotation(TestDataBackup.class);
+        if (testDataBackup != null) {
+            return testDataBackup.value();
+        }
+
+        Field[] fields = description.getTestClass().getDeclaredFields();
+        for (Field field : fields) {
+            if (field.getType().equals(TestDataResource.class)) {
+                testDataBackup = field.getAnnotation(TestDataBackup.class);
+                if (testDataBackup != null) {
+                    return testDataBackup.value();
+                }
+            }
+        }
+
+        testDataBackup = description.getTestClass().getAnnotation(TestDataBackup.class);
+        if (testDataBackup != null) {
+            return testDataBackup.value();
+        }
+
+        return DEFAULT_BACKUP_STRATEGY;
+    }
 
+    private void backupDb(IDatabaseConnection conn, String testDataBaseDir, BackupStrategy backupStrategy)
+            throws DataSetException, IOException, SQLException {
         // BASETESTDATA_DIR で指定されたディレクトリ内の table-ordering.txt に記述されたテーブル名一覧を取得し、
         // バックアップテーブルとしてセットする
         List<String> backupTableList = Files.readAllLines(Paths.get(testDataBaseDir, "table-ordering.txt"));
+
+        switch (backupStrategy) {
+            case MEMORY:
+                this.backupDataSet = new CachedDataSet(createQueryDataSet(conn, backupTableList));
+                break;
+            case SHADOW_TABLE:
+                backupDbToShadowTable(conn.getConnection(), backupTableList);
+                break;
+            default:
+                backupDbToFlatXml(conn, backupTableList);
+                break;
+        }
+    }
+
+    private QueryDataSet createQueryDataSet(IDatabaseConnection conn, List<String> backupTableList)
+            throws DataSetException {
+        QueryDataSet partialDataSet = new QueryDataSet(conn);
         for (String backupTable : backupTableList) {
             partialDataSet.addTable(backupTable);
         }
+        return partialDataSet;
+    }
 
-        ReplacementDataSet replacementDatasetBackup = new ReplacementDataSet(partialDataSet);
+    private void backupDbToFlatXml(IDatabaseConnection conn, List<String> backupTableList)
+            throws DataSetException, IOException {
+        ReplacementDataSet replacementDatasetBackup
+                = new ReplacementDataSet(createQueryDataSet(conn, backupTableList));
         replacementDatasetBackup.addReplacementObject(null, DbUnitUtils.NULL_STRING);
         this.backupFile = File.createTempFile(BACKUP_FILE_NAME, "xml");
         try (FileOutputStream fos = new FileOutputStream(this.backupFile)) {
@@ -175,6 +232,18 @@ public class TestDataResource extends TestWatcher {
         }
     }
 
+    private void backupDbToShadowTable(Connection connection, List<String> backupTableList)
+            throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            for (String backupTable : backupTableList) {
+                statement.execute("drop table if exists " + SHADOW_TABLE_PREFIX + backupTable);
+                statement.execute("create table " + SHADOW_TABLE_PREFIX + backupTable
+                        + " as select * from " + backupTable);
+            }
+        }
+        this.shadowTableList = backupTableList;
+    }
+
     private void restoreDb(IDatabaseConnection conn)
             throws MalformedURLException, DatabaseUnitException, SQLException {
         if (this.backupFile != null) {
@@ -183,6 +252,42 @@ public class TestDataResource extends TestWatcher {
             replacementDatasetRestore.addReplacementObject(DbUnitUtils.NULL_STRING, null);
             DatabaseOperation.CLEAN_INSERT.execute(conn, replacementDatasetRestore);
         }
+        if (this.backupDataSet != null) {
+            DatabaseOperation.CLEAN_INSERT.execute(conn, this.backupDataSet);
+            this.backupDataSet = null;
+        }
+        if (this.shadowTableList != null) {
+            try {
+                restoreDbFromShadowTable(conn.getConnection(), this.shadowTableList);
+            } finally {
+                this.shadowTableList = null;
+            }
+        }
+    }
+
+    private void restoreDbFromShadowTable(Connection connection, List<String> backupTableList)
+            throws SQLException {
+        // 外部キー制約があるので、delete は table-ordering.txt の逆順、insert は table-ordering.txt の順に行う
+        List<String> reverseTableList = new ArrayList<>(backupTableList);
+        Collections.reverse(reverseTableList);
+
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try (Statement statement = connection.createStatement()) {
+            for (String backupTable : reverseTableList) {
+                statement.execute("delete from " + backupTable);
+            }
+            for (String backupTable : backupTableList) {
+                statement.execute("insert into " + backupTable + " select * from " + SHADOW_TABLE_PREFIX + backupTable);
+                statement.execute("drop table " + SHADOW_TABLE_PREFIX + backupTable);
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
     }
 
     private void loadTestData(IDatabaseConnection conn, Description description) {
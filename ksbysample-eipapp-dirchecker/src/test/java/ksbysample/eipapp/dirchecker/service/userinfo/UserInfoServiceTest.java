@@ -2,22 +2,32 @@ package ksbysample.eipapp.dirchecker.service.userinfo;
 
 import ksbysample.common.test.rule.db.*;
 import ksbysample.eipapp.dirchecker.Application;
+import ksbysample.eipapp.dirchecker.dao.ImportCheckpointDao;
+import ksbysample.eipapp.dirchecker.entity.ImportCheckpoint;
 import org.dbunit.dataset.IDataSet;
 import org.dbunit.dataset.csv.CsvDataSet;
 import org.junit.Rule;
+import org.junit.rules.TemporaryFolder;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.SpringApplicationConfiguration;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.core.io.Resource;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
 import javax.sql.DataSource;
 import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.assertj.core.api.Assertions.tuple;
 
 @RunWith(SpringJUnit4ClassRunner.class)
@@ -27,16 +37,32 @@ public class UserInfoServiceTest {
     private static final String CLASSPATH_EXCEL_FOR_TEST
             = "ksbysample/eipapp/dirchecker/service/userinfo/Book1.xlsx";
 
+    private static final String CLASSPATH_CSV_FOR_TEST
+            = "ksbysample/eipapp/dirchecker/service/userinfo/TestData01.csv";
+
+    private static final List<String> RESUME_CSV_LINES = Arrays.asList(
+            "username,password,mail_address,roles"
+            , "yota takahashi,12345678,yota.takahashi@test.co.jp,ROLE_USER"
+            , "aoi inoue,abcdefgh,aoi.inoue@sample.com,\"ROLE_ADMIN,ROLE_USER\""
+            , "sota kato,xyz12345,sota.kato@test.co.jp,ROLE_USER");
+
     @Rule
     @Autowired
+    @TestDataBackup(BackupStrategy.MEMORY)
     public TestDataResource testDataResource;
 
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     @Autowired
     private DataSource dataSource;
 
     @Autowired
     private UserInfoService userInfoService;
 
+    @Autowired
+    private ImportCheckpointDao importCheckpointDao;
+
     @Test
     @NoUseTestDataResource
     public void loadFromExcelToList() throws Exception {
@@ -48,6 +74,30 @@ public class UserInfoServiceTest {
                         , tuple("aoi inoue", "abcdefgh", "aoi.inoue@sample.com", "ROLE_ADMIN,ROLE_USER"));
     }
 
+    @Test
+    @NoUseTestDataResource
+    public void loadFromExcel() throws Exception {
+        Resource resource = new ClassPathResource(CLASSPATH_EXCEL_FOR_TEST);
+        List<UserInfoExcelRow> userInfoExcelRowList = new ArrayList<>();
+        int count = userInfoService.loadFromExcel(resource.getFile(), userInfoExcelRowList::add);
+        assertThat(count).isEqualTo(2);
+        assertThat(userInfoExcelRowList).extracting("username", "password", "mailAddress", "roles")
+                .containsExactly(tuple("yota takahashi", "12345678", "yota.takahashi@test.co.jp", "ROLE_USER")
+                        , tuple("aoi inoue", "abcdefgh", "aoi.inoue@sample.com", "ROLE_ADMIN,ROLE_USER"));
+    }
+
+    @Test
+    @NoUseTestDataResource
+    public void loadFromCsv() throws Exception {
+        Resource resource = new ClassPathResource(CLASSPATH_CSV_FOR_TEST);
+        List<UserInfoExcelRow> userInfoExcelRowList = new ArrayList<>();
+        int count = userInfoService.loadFromCsv(resource.getFile(), userInfoExcelRowList::add);
+        assertThat(count).isEqualTo(2);
+        assertThat(userInfoExcelRowList).extracting("username", "password", "mailAddress", "roles")
+                .containsExactly(tuple("yota takahashi", "12345678", "yota.takahashi@test.co.jp", "ROLE_USER")
+                        , tuple("aoi inoue", "abcdefgh", "aoi.inoue@sample.com", "ROLE_ADMIN,ROLE_USER"));
+    }
+
     @Test
     @TestData("service/userinfo/testdata/001")
     public void loadUserInfoFromExcel() throws Exception {
@@ -67,4 +117,117 @@ public class UserInfoServiceTest {
                 , AssertOptions.INCLUDE_COLUMN);
     }
 
-}
\ No newline at end of file
+    @Test
+    @TestData("service/userinfo/testdata/001")
+    public void loadUserInfoFromExcelInChunks() throws Exception {
+        Resource resource = new ClassPathResource(CLASSPATH_EXCEL_FOR_TEST);
+        userInfoService.loadUserInfoFromExcelInChunks(resource.getFile(), 1);
+
+        IDataSet dataSet = new CsvDataSet(new File("src/test/resources/ksbysample/eipapp/dirchecker/service/userinfo/assertdata/001"));
+        TableDataAssert tableDataAssert = new TableDataAssert(dataSet, dataSource);
+        tableDataAssert.assertEqualsByQuery(
+                "select username, mail_address, enabled, cnt_badcredentials from user_info order by user_id"
+                , "user_info"
+                , new String[]{"username", "mail_address", "enabled", "cnt_badcredentials"}
+                , AssertOptions.INCLUDE_COLUMN);
+        tableDataAssert.assertEqualsByQuery("select role from user_role order by user_id, role_id"
+                , "user_role"
+                , new String[]{"role"}
+                , AssertOptions.INCLUDE_COLUMN);
+
+        // 最後まで登録できた場合にはチェックポイントは削除されている
+        assertThat(importCheckpointDao.selectById(resource.getFile().getName())).isNull();
+    }
+
+    @Test
+    @TestData("service/userinfo/testdata/001")
+    public void loadUserInfoFromCsvInChunksResumesAfterFailure() throws Exception {
+        File csvFile = writeResumeCsvFile();
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        try {
+            // 3行目の登録時にエラーになるよう、一時的に制約を追加する
+            jdbcTemplate.execute("alter table user_info add constraint user_info_resume_test_chk"
+                    + " check (username <> 'sota kato')");
+            assertThatThrownBy(() -> userInfoService.loadUserInfoFromCsvInChunks(csvFile, 1))
+                    .isInstanceOf(RuntimeException.class);
+            jdbcTemplate.execute("alter table user_info drop constraint user_info_resume_test_chk");
+
+            // コミット済の2行とチェックポイントが残っている
+            assertThat(jdbcTemplate.queryForList("select username from user_info order by user_id", String.class))
+                    .containsExactly("yota takahashi", "aoi inoue");
+            ImportCheckpoint checkpoint = importCheckpointDao.selectById(csvFile.getName());
+            assertThat(checkpoint).isNotNull();
+            assertThat(checkpoint.getCommittedRows()).isEqualTo(2);
+
+            // 再処理すると3行目から登録され、同じデータが重複して登録されない
+            userInfoService.loadUserInfoFromCsvInChunks(csvFile, 1);
+            assertResumeCsvLoadedOnce(jdbcTemplate);
+            assertThat(importCheckpointDao.selectById(csvFile.getName())).isNull();
+        } finally {
+            jdbcTemplate.execute("alter table user_info drop constraint if exists user_info_resume_test_chk");
+            deleteCheckpoint(csvFile);
+        }
+    }
+
+    @Test
+    @TestData("service/userinfo/testdata/001")
+    public void loadUserInfoFromCsvInChunksIgnoresCheckpointWhenFileSizeChanged() throws Exception {
+        File csvFile = writeResumeCsvFile();
+        try {
+            insertCheckpoint(csvFile, csvFile.length() + 1, csvFile.lastModified());
+
+            // チェックポイントの2行を読み飛ばさずに最初から登録する
+            userInfoService.loadUserInfoFromCsvInChunks(csvFile, 1);
+            assertResumeCsvLoadedOnce(new JdbcTemplate(dataSource));
+            assertThat(importCheckpointDao.selectById(csvFile.getName())).isNull();
+        } finally {
+            deleteCheckpoint(csvFile);
+        }
+    }
+
+    @Test
+    @TestData("service/userinfo/testdata/001")
+    public void loadUserInfoFromCsvInChunksIgnoresCheckpointWhenLastModifiedChanged() throws Exception {
+        File csvFile = writeResumeCsvFile();
+        try {
+            insertCheckpoint(csvFile, csvFile.length(), csvFile.lastModified() - 60_000L);
+
+            userInfoService.loadUserInfoFromCsvInChunks(csvFile, 1);
+            assertResumeCsvLoadedOnce(new JdbcTemplate(dataSource));
+            assertThat(importCheckpointDao.selectById(csvFile.getName())).isNull();
+        } finally {
+            deleteCheckpoint(csvFile);
+        }
+    }
+
+    private File writeResumeCsvFile() throws Exception {
+        File csvFile = temporaryFolder.newFile("ResumeTestData.csv");
+        Files.write(csvFile.toPath(), RESUME_CSV_LINES, StandardCharsets.UTF_8);
+        return csvFile;
+    }
+
+    private void insertCheckpoint(File csvFile, long fileSize, long lastModified) {
+        ImportCheckpoint checkpoint = new ImportCheckpoint();
+        checkpoint.setFileName(csvFile.getName());
+        checkpoint.setFileSize(fileSize);
+        checkpoint.setLastModified(lastModified);
+        checkpoint.setCommittedRows(2);
+        checkpoint.setUpdateTime(LocalDateTime.now());
+        importCheckpointDao.insert(checkpoint);
+    }
+
+    private void deleteCheckpoint(File csvFile) {
+        // import_checkpoint は TestDataResource のバックアップ対象外なので、テストで登録したデータは削除する
+        new JdbcTemplate(dataSource).update("delete from import_checkpoint where file_name = ?", csvFile.getName());
+    }
+
+    private void assertResumeCsvLoadedOnce(JdbcTemplate jdbcTemplate) {
+        assertThat(jdbcTemplate.queryForList("select username from user_info order by user_id", String.class))
+                .containsExactly("yota takahashi", "aoi inoue", "sota kato");
+        assertThat(jdbcTemplate.queryForList("select u.username || ':' || r.role from user_role r"
+                + " inner join user_info u on u.user_id = r.user_id order by u.user_id, r.role", String.class))
+                .containsExactly("yota takahashi:ROLE_USER", "aoi inoue:ROLE_ADMIN", "aoi inoue:ROLE_USER"
+                        , "sota kato:ROLE_USER");
+    }
+
+}